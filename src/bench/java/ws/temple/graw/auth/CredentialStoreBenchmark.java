@@ -0,0 +1,154 @@
+package ws.temple.graw.auth;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.customizers.RegisterMapper;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import com.google.api.client.auth.oauth2.StoredCredential;
+
+import ws.temple.graw.bench.Fixtures;
+import ws.temple.graw.db.QueryRunner;
+import ws.temple.graw.db.dao.CredentialDAO;
+
+/**
+ * Credential loads as performed on every authenticated request, straight
+ * from the database and through the cache in front of it. The serialized
+ * benchmark reads the same credentials the way they were stored before
+ * schema version 2, as one Java-serialized object per row.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CredentialStoreBenchmark {
+
+	private static final int USERS = 500;
+
+	private DBI dbi;
+	private DatabaseCredentialStore database;
+	private CachingCredentialStore cached;
+	private QueryRunner<SerializedCredentialDAO> serialized;
+	private String[] userIds;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		dbi = Fixtures.createDatabase();
+		database = new DatabaseCredentialStore("graw", new QueryRunner<>(dbi, CredentialDAO.class));
+		cached = new CachingCredentialStore(database, 1024);
+
+		serialized = new QueryRunner<>(dbi, SerializedCredentialDAO.class);
+		try(final Handle handle = dbi.open()) {
+			handle.execute("CREATE TABLE serialized_creds (id BIGINT IDENTITY, user_id VARCHAR(64) UNIQUE NOT NULL, stored_cred OTHER NOT NULL)");
+		}
+
+		userIds = new String[USERS];
+		for(int i = 0; i < USERS; i++) {
+			userIds[i] = Long.toString(170000000000000000L + i * 104729L);
+			final StoredCredential cred = new StoredCredential();
+			cred.setAccessToken("aT" + Long.toHexString(i * 0x9E3779B97F4A7C15L) + "xQ2mL8vR4nP1kD7sW3jF6hB9cY0tG5uE");
+			cred.setRefreshToken("rT" + Long.toHexString(i * 0xC2B2AE3D27D4EB4FL) + "pL4wZ8nM2vQ6sK1xJ9dH3fC7bT5yR0gA");
+			cred.setExpirationTimeMilliseconds(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(7));
+			database.set(userIds[i], cred);
+			final String userId = userIds[i];
+			serialized.execute((handle, dao) -> handle
+					.createStatement("INSERT INTO serialized_creds (user_id, stored_cred) VALUES (:uid, :cred)")
+					.bind("uid", userId)
+					.bind("cred", cred)
+					.execute());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() {
+		Fixtures.dropDatabase(dbi);
+	}
+
+	private int next = 0;
+
+	private String nextUser() {
+		next = (next + 1) % USERS;
+		return userIds[next];
+	}
+
+	@Benchmark
+	public StoredCredential database() throws IOException {
+		return database.get(nextUser());
+	}
+
+	@Benchmark
+	public StoredCredential serialized() {
+		final String userId = nextUser();
+		return serialized.query(dao -> dao.getCredential(userId));
+	}
+
+	@Benchmark
+	public StoredCredential cached() throws IOException {
+		return cached.get(nextUser());
+	}
+
+	@Benchmark
+	@Threads(4)
+	public StoredCredential cachedContended() throws IOException {
+		return cached.get(userIds[(int) (Thread.currentThread().getId() * 31 % USERS)]);
+	}
+
+
+	/* * * Pre-version 2 storage * * */
+
+	@RegisterMapper(SerializedCredentialMapper.class)
+	public static abstract class SerializedCredentialDAO implements Closeable {
+
+		@SqlQuery("SELECT stored_cred FROM serialized_creds WHERE user_id=:uid;")
+		public abstract StoredCredential getCredential(@Bind("uid") String userId);
+
+	}
+
+	/**
+	 * The mapper credentials were loaded with before the typed columns,
+	 * scanning the result metadata for the serialized object.
+	 *
+	 */
+	public static class SerializedCredentialMapper implements ResultSetMapper<StoredCredential> {
+
+		@Override
+		public StoredCredential map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+			final ResultSetMetaData meta = r.getMetaData();
+			for(int i = 1; i <= meta.getColumnCount(); i++) {
+				if(meta.getColumnType(i) == Types.OTHER) {
+					return (StoredCredential) r.getObject(i);
+				}
+			}
+			return null;
+		}
+
+	}
+
+}
@@ -0,0 +1,217 @@
+package ws.temple.graw.bench;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+import org.tmatesoft.svn.core.SVNLogEntry;
+
+import ws.temple.graw.db.DatabaseVersioner;
+import ws.temple.graw.db.Dialect;
+import ws.temple.graw.db.DialectStatementLocator;
+
+/**
+ * Shared fixture data for the benchmarks: stand-ins for the Discord API,
+ * throwaway databases, and text resembling what the bot sees in practice.
+ *
+ */
+public final class Fixtures {
+
+	private static final AtomicInteger DATABASE_COUNT = new AtomicInteger();
+
+	private static final String[] AUTHORS = { "brianide", "jsmith", "build-bot", "m.okafor", "lchen" };
+
+	private static final String[] COMMIT_MESSAGES = {
+			"Fix NPE when the log channel is deleted while a poll is running",
+			"Merge r1412-1420 from branches/release-2.3",
+			"Bump version to 2.4.0-SNAPSHOT",
+			"Refactor tile loader to stream chunks instead of reading the whole map up front\n\n"
+					+ "- Chunk reader now reuses its buffers\n"
+					+ "- Loader reports progress to the splash screen\n"
+					+ "- Removed the old synchronous code path",
+			"",
+			"Add <b>bold</b> & \"quoted\" names to the credits screen",
+			"Revert \"Temporarily disable shader cache\"\n\nThis reverts r2205, which broke the Linux build.",
+	};
+
+	private static final String[] CHAT_LINES = {
+			"anyone know why the build is red",
+			"!svn",
+			"!svn 2231",
+			"!svn stat",
+			"lol",
+			"pushed the fix, should be good now",
+			"can someone review my branch before I merge it? it touches the loader",
+			"!svnstat",
+			"brb lunch",
+			"that's not a bug, that's a feature",
+			"who broke the shader cache again",
+			"https://example.com/issues/4412 is back",
+	};
+
+	private Fixtures() {}
+
+
+	/**
+	 * Creates an empty in-memory HSQLDB database with the current schema.
+	 *
+	 * @return
+	 */
+	public static DBI createDatabase() {
+		final DBI dbi = new DBI("jdbc:hsqldb:mem:bench" + DATABASE_COUNT.incrementAndGet(), "SA", "");
+		dbi.setStatementLocator(new DialectStatementLocator(Dialect.HSQLDB));
+		try(final Handle handle = dbi.open()) {
+			new DatabaseVersioner(handle).execute();
+		}
+		return dbi;
+	}
+
+
+	/**
+	 * Shuts down the passed in-memory database.
+	 *
+	 * @param dbi
+	 */
+	public static void dropDatabase(DBI dbi) {
+		try(final Handle handle = dbi.open()) {
+			handle.execute("SHUTDOWN");
+		}
+	}
+
+
+	/**
+	 * Creates a stand-in for the passed interface. Methods named in the
+	 * passed map are answered by the associated function, which receives the
+	 * call's arguments; all other methods return null, zero or false.
+	 *
+	 * @param type
+	 * @param answers
+	 * @return
+	 */
+	public static <T> T stub(Class<T> type, Map<String,Function<Object[],Object>> answers) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+			final Function<Object[],Object> answer = answers.get(method.getName());
+			if(answer != null)
+				return answer.apply(args);
+
+			switch(method.getName()) {
+			case "toString":
+				return "Stub " + type.getSimpleName();
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			}
+
+			final Class<?> ret = method.getReturnType();
+			if(ret == boolean.class)
+				return false;
+			else if(ret == long.class)
+				return 0L;
+			else if(ret == int.class || ret == short.class || ret == byte.class || ret == char.class)
+				return 0;
+			else if(ret == double.class || ret == float.class)
+				return 0.0;
+			return null;
+		}));
+	}
+
+
+	/**
+	 * Returns a builder for a map of stub answers.
+	 *
+	 * @return
+	 */
+	public static Answers answers() {
+		return new Answers();
+	}
+
+
+	/**
+	 * Returns a log entry for the specified revision, with an author and
+	 * message chosen deterministically from a set of realistic ones.
+	 *
+	 * @param revision
+	 * @return
+	 */
+	public static SVNLogEntry logEntry(long revision) {
+		final int i = (int) (revision % COMMIT_MESSAGES.length);
+		return new SVNLogEntry(Collections.emptyMap(), revision, AUTHORS[(int) (revision % AUTHORS.length)],
+				new Date(1467331200000L + revision * 3600000L), COMMIT_MESSAGES[i]);
+	}
+
+
+	/**
+	 * Returns a reproducible sequence of chat messages.
+	 *
+	 * @param count
+	 * @param seed
+	 * @return
+	 */
+	public static List<String> chatMessages(int count, long seed) {
+		final Random random = new Random(seed);
+		final List<String> messages = new ArrayList<>(count);
+		for(int i = 0; i < count; i++)
+			messages.add(CHAT_LINES[random.nextInt(CHAT_LINES.length)]);
+		return messages;
+	}
+
+
+	/**
+	 * Returns a reproducible list of distinct phrases of the sort used as
+	 * chat triggers.
+	 *
+	 * @param count
+	 * @param seed
+	 * @return
+	 */
+	public static List<String> triggerPhrases(int count, long seed) {
+		final Random random = new Random(seed);
+		final List<String> phrases = new ArrayList<>(count);
+		phrases.add("build is red");
+		phrases.add("shader cache");
+		while(phrases.size() < count) {
+			final StringBuilder sb = new StringBuilder();
+			final int words = 1 + random.nextInt(3);
+			for(int w = 0; w < words; w++) {
+				if(w > 0)
+					sb.append(' ');
+				final int letters = 3 + random.nextInt(6);
+				for(int l = 0; l < letters; l++)
+					sb.append((char) ('a' + random.nextInt(26)));
+			}
+			if(!phrases.contains(sb.toString()))
+				phrases.add(sb.toString());
+		}
+		return phrases.subList(0, count);
+	}
+
+
+	/**
+	 * Builder for the answers given by a stub.
+	 *
+	 */
+	public static class Answers extends HashMap<String,Function<Object[],Object>> {
+		private static final long serialVersionUID = 1L;
+
+		public Answers on(String method, Function<Object[],Object> answer) {
+			put(method, answer);
+			return this;
+		}
+
+		public Answers returning(String method, Object value) {
+			put(method, args -> value);
+			return this;
+		}
+	}
+
+}
@@ -0,0 +1,376 @@
+package ws.temple.graw.bench;
+
+import java.io.File;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.skife.jdbi.v2.DBI;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.Message;
+import net.dv8tion.jda.entities.TextChannel;
+import ws.temple.graw.GuildManager;
+import ws.temple.graw.config.GuildConfig;
+import ws.temple.graw.crypt.AESCrypter;
+import ws.temple.graw.db.QueryRunner;
+import ws.temple.graw.db.dao.ConfigDAO;
+import ws.temple.graw.db.dao.OutboxDAO;
+import ws.temple.graw.svn.BackoffPolicy;
+import ws.temple.graw.svn.DefaultSVNMonitorFactory;
+import ws.temple.graw.svn.NotificationDispatcher;
+import ws.temple.graw.svn.NotificationOutbox;
+import ws.temple.graw.svn.PollingEngine;
+import ws.temple.graw.svn.RepositoryPollerRegistry;
+import ws.temple.graw.svn.RevisionCheckpointStore;
+import ws.temple.graw.svn.SVNManager;
+
+/**
+ * Self-contained load test of the revision pipeline. Each run creates local
+ * file:// repositories, simulates a number of guilds watching them through
+ * the real GuildManager and SVNManager, and commits to the repositories at a
+ * fixed rate. Discord is replaced by stubs which record each message sent and
+ * acknowledge it after a simulated round trip.
+ *
+ * For each guild count, the harness reports the time from each commit to the
+ * message announcing it, and the lag of the polling engine's scheduler
+ * thread. Run it with
+ *
+ *   mvn -Pbench test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *       -Dexec.args="-classpath %classpath ws.temple.graw.bench.LoadTest --guilds 10,100,500"
+ *
+ * Options, with their defaults:
+ *   --guilds 10,100,500     Guild counts to run, one after another
+ *   --guilds-per-repo 10    Guilds watching each repository
+ *   --rate 5                Commits per second, spread across repositories
+ *   --interval 2            Poll interval in seconds
+ *   --duration 30           Length of each measured run in seconds
+ *   --send-latency 50       Simulated Discord round trip in milliseconds
+ *   --workers 8             Poll worker threads
+ *
+ */
+public final class LoadTest {
+
+	/** Message format from which the harness can read back revision numbers */
+	private static final String MESSAGE_FORMAT = "r{{rnum}} {{auth}}: {{body}}";
+	private static final Pattern REVISION = Pattern.compile("(?m)^r(\\d+) ");
+
+	private static final long PROBE_PERIOD = 50;
+
+	private final Map<String,String> options;
+
+	private LoadTest(Map<String,String> options) {
+		this.options = options;
+	}
+
+
+	public static void main(String[] args) throws Exception {
+		final Map<String,String> options = new HashMap<>();
+		options.put("guilds", "10,100,500");
+		options.put("guilds-per-repo", "10");
+		options.put("rate", "5");
+		options.put("interval", "2");
+		options.put("duration", "30");
+		options.put("send-latency", "50");
+		options.put("workers", "8");
+		for(int i = 0; i + 1 < args.length; i += 2) {
+			if(!args[i].startsWith("--") || !options.containsKey(args[i].substring(2)))
+				throw new IllegalArgumentException("Unknown option: " + args[i]);
+			options.put(args[i].substring(2), args[i + 1]);
+		}
+
+		FSRepositoryFactory.setup();
+		final LoadTest test = new LoadTest(options);
+		System.out.printf("%7s %6s %8s %8s %8s %9s %9s %9s %9s %9s %9s%n",
+				"guilds", "repos", "expected", "received", "messages",
+				"p50 ms", "p90 ms", "p99 ms", "max ms", "lag p99", "lag max");
+		for(String count : options.get("guilds").split(","))
+			test.run(Integer.parseInt(count.trim())).print();
+	}
+
+
+	private int option(String name) {
+		return Integer.parseInt(options.get(name));
+	}
+
+
+	/**
+	 * Runs the pipeline with the specified number of guilds.
+	 *
+	 * @param guilds
+	 * @return
+	 * @throws Exception
+	 */
+	private Result run(int guilds) throws Exception {
+		final int repoCount = Math.max(1, (guilds + option("guilds-per-repo") - 1) / option("guilds-per-repo"));
+		final int interval = option("interval");
+		final Result result = new Result(guilds, repoCount);
+
+		final File root = File.createTempFile("graw-load", "");
+		root.delete();
+		root.mkdirs();
+
+		final ScheduledExecutorService gateway = Executors.newScheduledThreadPool(2);
+		final ScheduledExecutorService committer = Executors.newSingleThreadScheduledExecutor();
+		final ScheduledThreadPoolExecutor maintenance = new ScheduledThreadPoolExecutor(1);
+		final ScheduledThreadPoolExecutor notify = new ScheduledThreadPoolExecutor(1);
+		final PollingEngine engine = new PollingEngine(option("workers"), 1024, option("workers") - 1);
+		final DBI dbi = Fixtures.createDatabase();
+		try {
+			// Repositories, each with one revision so monitors have a starting point
+			final Repo[] repos = new Repo[repoCount];
+			for(int r = 0; r < repoCount; r++) {
+				final SVNURL url = SVNRepositoryFactory.createLocalRepository(new File(root, "repo" + r), true, false);
+				repos[r] = new Repo(url);
+				repos[r].commit("Initial import");
+			}
+
+			// Stand-ins for Discord
+			final List<Guild> guildStubs = new ArrayList<>();
+			final Map<String,Guild> guildsById = new HashMap<>();
+			final Map<String,TextChannel> channelsById = new HashMap<>();
+			final Message ack = Fixtures.stub(Message.class, Fixtures.answers());
+			for(int g = 0; g < guilds; g++) {
+				final String guildId = Long.toString(200000000000000000L + g);
+				final String channelId = Long.toString(300000000000000000L + g);
+				final Repo repo = repos[g % repoCount];
+				final Guild guild = Fixtures.stub(Guild.class, Fixtures.answers()
+						.returning("getId", guildId)
+						.returning("getName", "Load Test Guild " + g));
+				final TextChannel channel = Fixtures.stub(TextChannel.class, Fixtures.answers()
+						.returning("getId", channelId)
+						.returning("getGuild", guild)
+						.on("sendMessageAsync", args -> {
+							result.onMessage(repo, (String) args[0]);
+							@SuppressWarnings("unchecked")
+							final Consumer<Message> callback = (Consumer<Message>) args[1];
+							if(callback != null)
+								gateway.schedule(() -> callback.accept(ack), option("send-latency"), TimeUnit.MILLISECONDS);
+							return null;
+						}));
+				guildStubs.add(guild);
+				guildsById.put(guildId, guild);
+				channelsById.put(channelId, channel);
+			}
+			final JDA jda = Fixtures.stub(JDA.class, Fixtures.answers()
+					.returning("getGuilds", guildStubs)
+					.on("getGuildById", args -> guildsById.get(args[0]))
+					.on("getTextChannelById", args -> channelsById.get(args[0])));
+
+			// Guild configurations
+			final byte[] key = new byte[16];
+			new SecureRandom().nextBytes(key);
+			final AESCrypter crypt = new AESCrypter(key);
+			final byte[] password = crypt.encrypt("hunter2".toCharArray(), "UTF-8");
+			final QueryRunner<ConfigDAO> configRunner = new QueryRunner<>(dbi, ConfigDAO.class);
+			configRunner.inSession(() -> {
+				for(int g = 0; g < guilds; g++) {
+					final GuildConfig config = new GuildConfig();
+					config.setRepoUrl(repos[g % repoCount].url.toString());
+					config.setUsername("graw");
+					config.setPassword(password);
+					config.setQueryInterval(interval);
+					config.setLogChannel(Long.toString(300000000000000000L + g));
+					config.setMessageFormat(MESSAGE_FORMAT);
+					final String id = Long.toString(200000000000000000L + g);
+					configRunner.execute(dao -> dao.putConfig(id, config));
+				}
+			});
+
+			// The pipeline, wired as in AppBuilder
+			final BackoffPolicy backoff = new BackoffPolicy(TimeUnit.MINUTES.toMillis(5), 0.25);
+			final RepositoryPollerRegistry registry = new RepositoryPollerRegistry(engine, backoff, 300);
+			final RevisionCheckpointStore checkpoints = new RevisionCheckpointStore(configRunner);
+			checkpoints.preload();
+			checkpoints.start(maintenance, 10);
+			final NotificationDispatcher notifier = new NotificationDispatcher(notify, backoff);
+			final NotificationOutbox outbox = new NotificationOutbox(new QueryRunner<>(dbi, OutboxDAO.class), notifier, checkpoints, maintenance, 100);
+			outbox.preload();
+			final SVNManager svnMan = new SVNManager(jda, crypt, new DefaultSVNMonitorFactory(checkpoints, registry, notifier, outbox), checkpoints);
+			final GuildManager guildMan = new GuildManager(jda, configRunner, "0");
+			guildMan.addConfigListener(svnMan);
+			guildMan.addStatusListener(svnMan);
+			guildMan.initialize();
+
+			// Let every monitor complete its first poll before committing
+			Thread.sleep(TimeUnit.SECONDS.toMillis(2 * interval + 1));
+
+			// Measure the scheduler thread's lag alongside the run
+			final Runnable[] probe = new Runnable[1];
+			final AtomicLong due = new AtomicLong(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_PERIOD));
+			probe[0] = () -> {
+				result.lag.add(System.nanoTime() - due.get());
+				due.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROBE_PERIOD));
+				engine.getScheduler().schedule(probe[0], PROBE_PERIOD, TimeUnit.MILLISECONDS);
+			};
+			engine.getScheduler().schedule(probe[0], PROBE_PERIOD, TimeUnit.MILLISECONDS);
+
+			// Commit round-robin across repositories for the measured period
+			final AtomicInteger sequence = new AtomicInteger();
+			committer.scheduleAtFixedRate(() -> {
+				final int n = sequence.getAndIncrement();
+				final Repo repo = repos[n % repoCount];
+				try {
+					repo.commit("Load test commit " + n);
+					result.expected.addAndGet(guildsFor(repo, repos, guilds));
+				}
+				catch(SVNException e) {
+					System.err.println("Commit failed: " + e.getMessage());
+				}
+			}, 0, 1000000 / option("rate"), TimeUnit.MICROSECONDS);
+			Thread.sleep(TimeUnit.SECONDS.toMillis(option("duration")));
+			committer.shutdownNow();
+			committer.awaitTermination(10, TimeUnit.SECONDS);
+
+			// Allow the last commits to be polled and announced
+			Thread.sleep(TimeUnit.SECONDS.toMillis(2 * interval + 5));
+
+			notifier.shutdown();
+			outbox.shutdown();
+			svnMan.shutdown();
+			checkpoints.shutdown();
+			return result;
+		}
+		finally {
+			committer.shutdownNow();
+			engine.shutdown();
+			maintenance.shutdownNow();
+			notify.shutdownNow();
+			gateway.shutdownNow();
+			Fixtures.dropDatabase(dbi);
+			FileUtils.deleteDirectory(root);
+		}
+	}
+
+
+	private static int guildsFor(Repo repo, Repo[] repos, int guilds) {
+		final int index = Arrays.asList(repos).indexOf(repo);
+		return guilds / repos.length + (index < guilds % repos.length ? 1 : 0);
+	}
+
+
+	/**
+	 * A local repository, along with the time each measured revision was
+	 * committed.
+	 *
+	 */
+	private static class Repo {
+		private final SVNURL url;
+		private final SVNRepository repo;
+		private final Map<Long,Long> committedAt = new ConcurrentHashMap<>();
+
+		Repo(SVNURL url) throws SVNException {
+			this.url = url;
+			this.repo = SVNRepositoryFactory.create(url);
+		}
+
+		/**
+		 * Commits an empty revision with the passed message.
+		 *
+		 * @param message
+		 * @throws SVNException
+		 */
+		void commit(String message) throws SVNException {
+			final ISVNEditor editor = repo.getCommitEditor(message, null);
+			editor.openRoot(-1);
+			editor.closeDir();
+			final SVNCommitInfo info = editor.closeEdit();
+			committedAt.put(info.getNewRevision(), System.nanoTime());
+		}
+	}
+
+
+	/**
+	 * The measurements taken during a single run.
+	 *
+	 */
+	private static class Result {
+		private final int guilds;
+		private final int repos;
+		private final AtomicLong expected = new AtomicLong();
+		private final AtomicLong messages = new AtomicLong();
+		private final Samples latency = new Samples();
+		private final Samples lag = new Samples();
+
+		Result(int guilds, int repos) {
+			this.guilds = guilds;
+			this.repos = repos;
+		}
+
+		void onMessage(Repo repo, String text) {
+			final long now = System.nanoTime();
+			messages.incrementAndGet();
+			final Matcher m = REVISION.matcher(text);
+			while(m.find()) {
+				final Long committed = repo.committedAt.get(Long.parseLong(m.group(1)));
+				if(committed != null)
+					latency.add(now - committed);
+			}
+		}
+
+		void print() {
+			System.out.printf("%7d %6d %8d %8d %8d %9.1f %9.1f %9.1f %9.1f %9.2f %9.2f%n",
+					guilds, repos, expected.get(), latency.size(), messages.get(),
+					latency.percentile(50), latency.percentile(90), latency.percentile(99), latency.percentile(100),
+					lag.percentile(99), lag.percentile(100));
+		}
+	}
+
+
+	/**
+	 * An unbounded collection of durations in nanoseconds.
+	 *
+	 */
+	private static class Samples {
+		private long[] values = new long[1024];
+		private int size = 0;
+
+		synchronized void add(long nanos) {
+			if(size == values.length)
+				values = Arrays.copyOf(values, size * 2);
+			values[size++] = nanos;
+		}
+
+		synchronized int size() {
+			return size;
+		}
+
+		/**
+		 * Returns the specified percentile, in milliseconds.
+		 *
+		 * @param p
+		 * @return
+		 */
+		synchronized double percentile(double p) {
+			if(size == 0)
+				return Double.NaN;
+			final long[] sorted = Arrays.copyOf(values, size);
+			Arrays.sort(sorted);
+			final int index = (int) Math.ceil(p / 100 * size) - 1;
+			return sorted[Math.max(0, Math.min(size - 1, index))] / 1e6;
+		}
+	}
+
+}
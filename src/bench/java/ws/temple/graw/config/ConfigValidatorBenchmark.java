@@ -0,0 +1,100 @@
+package ws.temple.graw.config;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import net.dv8tion.jda.JDA;
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.entities.Role;
+import net.dv8tion.jda.entities.TextChannel;
+import ws.temple.graw.GuildManager;
+import ws.temple.graw.bench.Fixtures;
+import ws.temple.graw.crypt.AESCrypter;
+
+/**
+ * Validation of a submitted configuration form, as parsed from a request,
+ * against stand-ins for the guild, its channel and its role.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigValidatorBenchmark {
+
+	private static final String GUILD_ID = "181111111111111111";
+	private static final String CHANNEL_ID = "182222222222222222";
+	private static final String ROLE_ID = "183333333333333333";
+
+	/** Whether the submission changes the password, which costs an encryption */
+	@Param({ "false", "true" })
+	private boolean withPassword;
+
+	private ConfigValidatorServlet servlet;
+	private HttpServletRequest request;
+	private Guild guild;
+
+	@Setup
+	public void setup() throws Exception {
+		final Role role = Fixtures.stub(Role.class, Fixtures.answers()
+				.returning("getId", ROLE_ID));
+		guild = Fixtures.stub(Guild.class, Fixtures.answers()
+				.returning("getId", GUILD_ID)
+				.on("getRoleById", args -> ROLE_ID.equals(args[0]) ? role : null));
+		final TextChannel channel = Fixtures.stub(TextChannel.class, Fixtures.answers()
+				.returning("getId", CHANNEL_ID)
+				.returning("getGuild", guild));
+		final JDA jda = Fixtures.stub(JDA.class, Fixtures.answers()
+				.on("getTextChannelById", args -> CHANNEL_ID.equals(args[0]) ? channel : null)
+				.on("getGuildById", args -> GUILD_ID.equals(args[0]) ? guild : null));
+
+		final byte[] key = new byte[16];
+		new SecureRandom().nextBytes(key);
+		servlet = new ConfigValidatorServlet(new GuildManager(jda, null, "0"), null, null, new AESCrypter(key), null);
+
+		final Map<String,String[]> params = new HashMap<>();
+		params.put("server", new String[] { GUILD_ID });
+		params.put("svn_url", new String[] { "https://svn.example.com/repos/game/trunk" });
+		params.put("svn_un", new String[] { "graw" });
+		params.put("svn_pw", new String[] { withPassword ? "correct horse battery staple" : "" });
+		params.put("svn_int", new String[] { "300" });
+		params.put("bot_chan", new String[] { CHANNEL_ID });
+		params.put("bot_role", new String[] { ROLE_ID });
+		params.put("bot_cmd", new String[] { "on" });
+		params.put("fmt_date", new String[] { "EEE, d MMM yyyy HH:mm z" });
+		params.put("fmt_msg", new String[] { "__r{{rnum}}__ by **{{auth}}** on {{date}}\n>>> {{body}}" });
+		params.put("identity", new String[] { "3f2b9c1e-8d4a-4c6f-a1b7-5e9d0c2f7a48" });
+		request = Fixtures.stub(HttpServletRequest.class, Fixtures.answers()
+				.returning("getParameterMap", params)
+				.on("getParameter", args -> params.containsKey(args[0]) ? params.get(args[0])[0] : null));
+	}
+
+	@Benchmark
+	public boolean checkFormFields() {
+		final GuildConfig config = new GuildConfig();
+		config.setPassword(new byte[48]);
+		final List<String> errors = new ArrayList<>();
+		return servlet.checkFormFields(request.getParameterMap(), guild, config, errors);
+	}
+
+}
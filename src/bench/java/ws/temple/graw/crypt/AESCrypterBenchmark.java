@@ -0,0 +1,93 @@
+package ws.temple.graw.crypt;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encryption and decryption of repository passwords and OAuth tokens, on one
+ * thread and on several sharing a single crypter as the application does.
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AESCrypterBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Shared {
+		AESCrypter crypter;
+
+		@Setup
+		public void setup() throws CrypterException {
+			final byte[] key = new byte[16];
+			new SecureRandom().nextBytes(key);
+			crypter = new AESCrypter(key);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Data {
+		final char[] password = "correct horse battery staple".toCharArray();
+		final byte[] token = "mfa.VkO_2G4Qv3T5ZsiVwMRN8ZIRgYbD0K2lpsk4ipqRcwK8Lh0ZnKH2sHGbD8Iw".getBytes();
+		byte[] encryptedPassword;
+		ByteBuffer encryptedToken;
+		ByteBuffer out;
+
+		@Setup
+		public void setup(Shared shared) throws CrypterException {
+			encryptedPassword = shared.crypter.encrypt(password, "UTF-8");
+			encryptedToken = shared.crypter.encrypt(ByteBuffer.wrap(token));
+			out = ByteBuffer.allocate(shared.crypter.getEncryptedLength(token.length));
+		}
+	}
+
+	@Benchmark
+	public byte[] encryptPassword(Shared shared, Data data) throws CrypterException {
+		return shared.crypter.encrypt(data.password, "UTF-8");
+	}
+
+	@Benchmark
+	public char[] decryptPassword(Shared shared, Data data) throws CrypterException {
+		return shared.crypter.decrypt(data.encryptedPassword, "UTF-8");
+	}
+
+	@Benchmark
+	public int encryptTokenBuffer(Shared shared, Data data) throws CrypterException {
+		data.out.clear();
+		return shared.crypter.encrypt(ByteBuffer.wrap(data.token), data.out);
+	}
+
+	@Benchmark
+	public int decryptTokenBuffer(Shared shared, Data data) throws CrypterException {
+		data.out.clear();
+		return shared.crypter.decrypt(data.encryptedToken.duplicate(), data.out);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public byte[] encryptPasswordContended(Shared shared, Data data) throws CrypterException {
+		return shared.crypter.encrypt(data.password, "UTF-8");
+	}
+
+	@Benchmark
+	@Threads(4)
+	public char[] decryptPasswordContended(Shared shared, Data data) throws CrypterException {
+		return shared.crypter.decrypt(data.encryptedPassword, "UTF-8");
+	}
+
+}
@@ -0,0 +1,123 @@
+package ws.temple.graw.db;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.skife.jdbi.v2.DBI;
+
+import ws.temple.graw.bench.Fixtures;
+import ws.temple.graw.config.GuildConfig;
+import ws.temple.graw.db.dao.ConfigDAO;
+
+/**
+ * Round trips through QueryRunner against an in-memory HSQLDB database
+ * holding a realistic number of guild configurations, comparing its ways of
+ * obtaining a handle.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryRunnerBenchmark {
+
+	private static final int GUILDS = 200;
+
+	/** Number of lookups made per invocation of the batched benchmarks */
+	private static final int LOOKUPS = 10;
+
+	private DBI dbi;
+	private QueryRunner<ConfigDAO> runner;
+	private String[] guildIds;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		dbi = Fixtures.createDatabase();
+		runner = new QueryRunner<>(dbi, ConfigDAO.class);
+
+		guildIds = new String[GUILDS];
+		runner.inSession(() -> {
+			for(int i = 0; i < GUILDS; i++) {
+				guildIds[i] = Long.toString(180000000000000000L + i * 7919L);
+				final GuildConfig config = new GuildConfig();
+				config.setRepoUrl("https://svn.example.com/repos/project" + i);
+				config.setUsername("graw");
+				config.setPassword(new byte[48]);
+				config.setLogChannel(Long.toString(190000000000000000L + i));
+				final String id = guildIds[i];
+				runner.executeTransaction(dao -> {
+					dao.putConfig(id, config);
+					dao.updateLatestRevision(id, 1000 + id.hashCode() % 1000);
+				});
+			}
+		});
+	}
+
+	@TearDown(Level.Trial)
+	public void teardown() {
+		Fixtures.dropDatabase(dbi);
+	}
+
+	private int next = 0;
+
+	private String nextGuild() {
+		next = (next + 1) % GUILDS;
+		return guildIds[next];
+	}
+
+	@Benchmark
+	public GuildConfig onDemand() {
+		final String id = nextGuild();
+		return runner.query(dao -> dao.getConfig(id));
+	}
+
+	@Benchmark
+	public GuildConfig attachedHandle() {
+		final String id = nextGuild();
+		return runner.query((handle, dao) -> dao.getConfig(id));
+	}
+
+	@Benchmark
+	public long transaction() {
+		final String id = nextGuild();
+		return runner.doTransaction(dao -> dao.getLatestRevision(id));
+	}
+
+	@Benchmark
+	public void separateLookups(Blackhole bh) {
+		for(int i = 0; i < LOOKUPS; i++) {
+			final String id = nextGuild();
+			bh.consume(runner.query(dao -> dao.getConfig(id)));
+		}
+	}
+
+	@Benchmark
+	public void sessionLookups(Blackhole bh) {
+		runner.inSession(() -> {
+			for(int i = 0; i < LOOKUPS; i++) {
+				final String id = nextGuild();
+				bh.consume(runner.query(dao -> dao.getConfig(id)));
+			}
+		});
+	}
+
+	@Benchmark
+	public Object bulkLoad() {
+		return runner.query(dao -> dao.getAllConfigs());
+	}
+
+}
@@ -0,0 +1,72 @@
+package ws.temple.graw.listeners;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ws.temple.graw.bench.Fixtures;
+
+/**
+ * Trigger matching with the Aho-Corasick matcher, against the naive scan of
+ * one String.contains per trigger which it replaced.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeywordMatcherBenchmark {
+
+	@Param({ "4", "64", "512" })
+	private int keywords;
+
+	private String[] phrases;
+	private KeywordMatcher matcher;
+	private String[] messages;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		final List<String> list = Fixtures.triggerPhrases(keywords, 23);
+		phrases = list.toArray(new String[list.size()]);
+		matcher = new KeywordMatcher(list);
+
+		final List<String> chat = Fixtures.chatMessages(1024, 29);
+		messages = chat.toArray(new String[chat.size()]);
+	}
+
+	@Benchmark
+	public void matcher(Blackhole bh) {
+		bh.consume(matcher.match(messages[next++ & (messages.length - 1)]));
+	}
+
+	/** As done by TriggerListener, which only builds the set of matches when there are any */
+	@Benchmark
+	public void matcherCheckFirst(Blackhole bh) {
+		final String message = messages[next++ & (messages.length - 1)];
+		if(matcher.matchesAny(message))
+			bh.consume(matcher.match(message));
+	}
+
+	@Benchmark
+	public void contains(Blackhole bh) {
+		final String message = messages[next++ & (messages.length - 1)];
+		for(String phrase : phrases)
+			bh.consume(message.contains(phrase));
+	}
+
+}
@@ -0,0 +1,63 @@
+package ws.temple.graw.listeners;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+import ws.temple.graw.bench.Fixtures;
+
+/**
+ * Matching of chat messages against a command pattern, over a mix of
+ * commands and ordinary chatter.
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatternListenerBenchmark {
+
+	private PatternListener listener;
+	private String[] messages;
+	private int next = 0;
+
+	@Setup
+	public void setup(Blackhole bh) {
+		// Same pattern as SVNListener, minus its dependence on a live bot
+		listener = new PatternListener() {
+			@Override
+			public Pattern getPattern() {
+				return Pattern.compile("^!svn(?: (\\d+|stat))?$");
+			}
+
+			@Override
+			public void onMatch(String[] groups, MessageReceivedEvent event) {
+				bh.consume(groups);
+			}
+		};
+
+		final List<String> chat = Fixtures.chatMessages(1024, 17);
+		messages = chat.toArray(new String[chat.size()]);
+	}
+
+	@Benchmark
+	public boolean check() {
+		return listener.check(messages[next++ & (messages.length - 1)], null);
+	}
+
+}
@@ -0,0 +1,64 @@
+package ws.temple.graw.svn;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNLogEntry;
+
+import ws.temple.graw.bench.Fixtures;
+
+/**
+ * Formatting of revision announcements, with the default format and with a
+ * more elaborate one of the sort guilds configure.
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SVNRevisionFormatterBenchmark {
+
+	@Param({ "default", "custom" })
+	private String format;
+
+	private SVNRevisionFormatter formatter;
+	private SVNLogEntry[] entries;
+	private int next = 0;
+
+	@Setup
+	public void setup() throws IOException {
+		formatter = (format.equals("default")
+				? new SVNRevisionFormatter()
+				: new SVNRevisionFormatter("EEE, d MMM yyyy HH:mm", "__r{{rnum}}__ by **{{auth}}** on {{date}}\n>>> {{body}}"));
+
+		entries = new SVNLogEntry[64];
+		for(int i = 0; i < entries.length; i++)
+			entries[i] = Fixtures.logEntry(2200 + i);
+	}
+
+	@Benchmark
+	public String format() throws IOException {
+		return formatter.format(entries[next++ & (entries.length - 1)]);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public String formatShared() throws IOException {
+		return formatter.format(entries[(int) (Thread.currentThread().getId() & (entries.length - 1))]);
+	}
+
+}
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.security.auth.login.LoginException;
 import javax.servlet.Filter;
@@ -22,12 +23,13 @@ import org.skife.jdbi.v2.Handle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.apache.ApacheHttpTransport;
 
 import net.dv8tion.jda.JDA;
 import net.dv8tion.jda.JDABuilder;
 import ws.temple.graw.AppConfig.Property;
 import ws.temple.graw.auth.AbstractAuthorizationFlowFilter;
+import ws.temple.graw.auth.CachingCredentialStore;
 import ws.temple.graw.auth.DatabaseCredentialStore;
 import ws.temple.graw.auth.DiscordAuthFilter;
 import ws.temple.graw.client.UserAPI;
@@ -38,23 +40,43 @@ import ws.temple.graw.crypt.AESCrypter;
 import ws.temple.graw.crypt.Crypter;
 import ws.temple.graw.crypt.CrypterException;
 import ws.temple.graw.db.DatabaseVersioner;
+import ws.temple.graw.db.Dialect;
+import ws.temple.graw.db.DialectStatementLocator;
 import ws.temple.graw.db.QueryRunner;
 import ws.temple.graw.db.dao.ConfigDAO;
 import ws.temple.graw.db.dao.CredentialDAO;
+import ws.temple.graw.db.dao.OutboxDAO;
+import ws.temple.graw.listeners.CommandDispatcher;
 import ws.temple.graw.listeners.DramaListener;
 import ws.temple.graw.listeners.MaintenanceListener;
 import ws.temple.graw.listeners.SVNListener;
+import ws.temple.graw.metrics.Metrics;
+import ws.temple.graw.metrics.MetricsServlet;
+import ws.temple.graw.svn.BackoffPolicy;
 import ws.temple.graw.svn.DefaultSVNMonitorFactory;
+import ws.temple.graw.svn.NotificationDispatcher;
+import ws.temple.graw.svn.NotificationOutbox;
+import ws.temple.graw.svn.PollingEngine;
+import ws.temple.graw.svn.RepositoryPollerRegistry;
+import ws.temple.graw.svn.RevisionCheckpointStore;
 import ws.temple.graw.svn.SVNManager;
 
 @WebListener
 public class AppBuilder implements ServletContextListener {
 	private static final Logger LOG = LoggerFactory.getLogger(AppBuilder.class);
 	private static final String DISCORD_API_URL = "https://discordapp.com/api";
+	private static final double BACKOFF_JITTER = 0.25;
 
 	private GuildManager guildMan;
 	private SVNManager svnMan;
-	private ScheduledThreadPoolExecutor exec;
+	private PollingEngine engine;
+	private ScheduledThreadPoolExecutor maintenanceExec;
+	private ScheduledThreadPoolExecutor notifyExec;
+	private AsyncRequestExecutor requestExec;
+	private NotificationDispatcher notifier;
+	private NotificationOutbox outbox;
+	private CommandDispatcher commands;
+	private CachingCredentialStore credStore;
 	
 	@Override
 	public void contextInitialized(ServletContextEvent sce) {
@@ -67,21 +89,34 @@ public class AppBuilder implements ServletContextListener {
 			final DBI dbi = buildDataSource(config);
 			
 			// Wire up the managers
-			guildMan = buildGuildManager(jda, config, new QueryRunner<>(dbi, ConfigDAO.class));
-			svnMan = buildSVNManager(jda, new QueryRunner<>(dbi, ConfigDAO.class), passCrypt);
+			final QueryRunner<ConfigDAO> configRunner = new QueryRunner<>(dbi, ConfigDAO.class);
+			guildMan = buildGuildManager(jda, config, configRunner);
+			svnMan = buildSVNManager(jda, config, configRunner, new QueryRunner<>(dbi, OutboxDAO.class), passCrypt);
 			guildMan.addConfigListener(svnMan);
 			guildMan.addStatusListener(svnMan);
-			jda.addEventListener(new SVNListener(svnMan, guildMan));
+			commands = new CommandDispatcher()
+					.register("svn", new SVNListener(svnMan, guildMan));
+			jda.addEventListener(commands);
 			jda.addEventListener(new MaintenanceListener(guildMan));
 			guildMan.initialize();
 			
 			// Map servlets
 			final ServletContext ctx = sce.getServletContext();
-			final UserAPI userApi = new UserAPI(new NetHttpTransport(), DISCORD_API_URL);
+			final UserAPI userApi = new UserAPI(new ApacheHttpTransport(), DISCORD_API_URL, config.get(Property.DISCORD_CACHE_TTL, Long.class), TimeUnit.SECONDS);
 			mapFilter(ctx, new CSRFFilter(), "/conf/*", "/validate");
 			mapFilter(ctx, buildAuthFilter(config, dbi, tokenCrypt), "/conf/*", "/validate");
-			mapServlet(ctx, new BotConfigServlet(guildMan, userApi), "/conf");
-			mapServlet(ctx, new ConfigValidatorServlet(guildMan, svnMan, userApi, passCrypt), "/validate");
+			requestExec = new AsyncRequestExecutor(
+					config.get(Property.WEB_WORKER_THREADS, Integer.class),
+					config.get(Property.WEB_WORKER_QUEUE, Integer.class),
+					config.get(Property.WEB_REQUEST_TIMEOUT, Long.class), TimeUnit.SECONDS);
+			mapServlet(ctx, new BotConfigServlet(guildMan, userApi, requestExec), "/conf");
+			mapServlet(ctx, new ConfigValidatorServlet(guildMan, svnMan, userApi, passCrypt, requestExec), "/validate");
+			final String metricsToken = config.get(Property.METRICS_TOKEN);
+			if(metricsToken != null && !metricsToken.isEmpty())
+				mapServlet(ctx, new MetricsServlet(metricsToken), "/metrics");
+			else
+				LOG.info("No metrics token configured; /metrics will not be served");
+			registerMetrics(userApi);
 			
 			LOG.info("Deployment complete");
 		}
@@ -107,6 +142,7 @@ public class AppBuilder implements ServletContextListener {
 		ds.setPassword(config.get(Property.JDBC_PASSWORD));
 		
 		final DBI dbi = new DBI(ds);
+		dbi.setStatementLocator(new DialectStatementLocator(Dialect.fromUrl(config.get(Property.JDBC_URL))));
 		try(final Handle handle = dbi.open();) {
 			new DatabaseVersioner(handle).execute();
 		}
@@ -132,10 +168,25 @@ public class AppBuilder implements ServletContextListener {
 	}
 	
 	
-	private SVNManager buildSVNManager(JDA jda, QueryRunner<ConfigDAO> runner, Crypter crypt) {
-		exec = new ScheduledThreadPoolExecutor(3);
-		exec.setRemoveOnCancelPolicy(true);
-		return new SVNManager(jda, crypt, new DefaultSVNMonitorFactory(runner, exec));
+	private SVNManager buildSVNManager(JDA jda, AppConfig config, QueryRunner<ConfigDAO> runner, QueryRunner<OutboxDAO> outboxRunner, Crypter crypt) {
+		maintenanceExec = new ScheduledThreadPoolExecutor(1);
+		maintenanceExec.setRemoveOnCancelPolicy(true);
+		engine = new PollingEngine(
+				config.get(Property.SVN_WORKER_THREADS, Integer.class),
+				config.get(Property.SVN_WORKER_QUEUE, Integer.class),
+				config.get(Property.SVN_HOST_CONCURRENCY, Integer.class));
+		final BackoffPolicy backoff = new BackoffPolicy(TimeUnit.SECONDS.toMillis(config.get(Property.SVN_BACKOFF_MAX, Long.class)), BACKOFF_JITTER);
+		final RepositoryPollerRegistry registry = new RepositoryPollerRegistry(engine, backoff, config.get(Property.SVN_STATUS_TTL, Long.class));
+		final RevisionCheckpointStore checkpoints = new RevisionCheckpointStore(runner);
+		checkpoints.preload();
+		checkpoints.start(maintenanceExec, config.get(Property.SVN_CHECKPOINT_INTERVAL, Long.class));
+		notifyExec = new ScheduledThreadPoolExecutor(1);
+		notifyExec.setRemoveOnCancelPolicy(true);
+		notifier = new NotificationDispatcher(notifyExec,
+				new BackoffPolicy(TimeUnit.SECONDS.toMillis(config.get(Property.NOTIFY_BACKOFF_MAX, Long.class)), BACKOFF_JITTER));
+		outbox = new NotificationOutbox(outboxRunner, notifier, checkpoints, maintenanceExec, config.get(Property.OUTBOX_BATCH_SIZE, Integer.class));
+		outbox.preload();
+		return new SVNManager(jda, crypt, new DefaultSVNMonitorFactory(checkpoints, registry, notifier, outbox), checkpoints);
 	}
 	
 	
@@ -146,12 +197,58 @@ public class AppBuilder implements ServletContextListener {
 				config.get(Property.OAUTH_REDIRECT_URI),
 				crypt,
 				//MemoryDataStoreFactory.getDefaultInstance().getDataStore("graw_store"));
-				new DatabaseCredentialStore("graw", new QueryRunner<>(dbi, CredentialDAO.class)));
+				credStore = new CachingCredentialStore(
+						new DatabaseCredentialStore("graw", new QueryRunner<>(dbi, CredentialDAO.class)),
+						config.get(Property.AUTH_CACHE_SIZE, Integer.class)));
+	}
+	
+	
+	/**
+	 * Exposes the statistics kept by the application's components through
+	 * the metrics registry. Each is sampled only when metrics are collected.
+	 * 
+	 * @param userApi
+	 */
+	private void registerMetrics(UserAPI userApi) {
+		Metrics.gauge("graw_svn_worker_queue_depth", "Polls waiting for a free worker", engine::getQueueDepth);
+		Metrics.gauge("graw_svn_worker_active", "Polls currently running", engine::getActiveCount);
+		Metrics.gauge("graw_svn_host_backlog", "Polls held back by per-host concurrency limits", engine::getBacklog);
+		Metrics.gauge("graw_svn_scheduled_ticks", "Ticks waiting for their scheduled time", engine::getScheduledCount);
+		Metrics.counter("graw_svn_dispatched_total", "Polls handed to the worker pool", engine::getDispatchedCount);
+		Metrics.counter("graw_svn_rejected_total", "Times the worker pool was saturated", engine::getRejectedCount);
+		
+		Metrics.counter("graw_cache_hits_total", "Lookups served from a cache", guildMan::getConfigCacheHits, "cache", "guild_config");
+		Metrics.counter("graw_cache_misses_total", "Lookups which missed a cache", guildMan::getConfigCacheMisses, "cache", "guild_config");
+		Metrics.counter("graw_cache_hits_total", "Lookups served from a cache", credStore::getHitCount, "cache", "credentials");
+		Metrics.counter("graw_cache_misses_total", "Lookups which missed a cache", credStore::getMissCount, "cache", "credentials");
+		Metrics.counter("graw_cache_evictions_total", "Entries evicted from a cache", credStore::getEvictionCount, "cache", "credentials");
+		Metrics.gauge("graw_cache_size", "Entries held in a cache", credStore::getCachedCount, "cache", "credentials");
+		Metrics.counter("graw_cache_hits_total", "Lookups served from a cache", userApi::getCacheHits, "cache", "discord_api");
+		Metrics.counter("graw_cache_misses_total", "Lookups which missed a cache", userApi::getCacheMisses, "cache", "discord_api");
+		Metrics.counter("graw_discord_api_rate_limited_total", "429 responses received from the Discord REST API", userApi::getRateLimitedCount);
+		
+		Metrics.gauge("graw_notify_queue_depth", "Announcements awaiting delivery",
+				() -> notifier.getAllStats().values().stream().mapToLong(NotificationDispatcher.GuildStats::getQueueDepth).sum());
+		Metrics.counter("graw_notify_delivered_total", "Announcements delivered",
+				() -> notifier.getAllStats().values().stream().mapToLong(NotificationDispatcher.GuildStats::getDeliveredCount).sum());
+		Metrics.counter("graw_notify_failures_total", "Failed attempts to deliver announcements",
+				() -> notifier.getAllStats().values().stream().mapToLong(NotificationDispatcher.GuildStats::getFailureCount).sum());
+		Metrics.counter("graw_notify_dropped_total", "Announcements given up on",
+				() -> notifier.getAllStats().values().stream().mapToLong(NotificationDispatcher.GuildStats::getDroppedCount).sum());
+		
+		Metrics.counter("graw_commands_unknown_total", "Prefixed messages naming no registered command", commands::getUnknownCount);
+		commands.getCommands().forEach((name, command) -> {
+			Metrics.counter("graw_commands_total", "Messages routed to a command", command::getHits, "command", name);
+			Metrics.counter("graw_commands_matched_total", "Routed messages which matched a command's pattern", command::getMatches, "command", name);
+			Metrics.counter("graw_commands_seconds_total", "Time spent handling a command",
+					() -> command.getTotalNanos() / 1e9, "command", name);
+		});
 	}
 	
 	
 	private void mapServlet(ServletContext ctx, Servlet servlet, String... urlPatterns) {
 		final ServletRegistration.Dynamic dyn = ctx.addServlet(servlet.getClass().getName(), servlet);
+		dyn.setAsyncSupported(true);
 		for(String pattern : urlPatterns) {
 			dyn.addMapping(pattern);
 		}
@@ -160,6 +257,7 @@ public class AppBuilder implements ServletContextListener {
 	
 	private void mapFilter(ServletContext ctx, Filter filter, String... urlPatterns) {
 		final FilterRegistration.Dynamic dyn = ctx.addFilter(filter.getClass().getName(), filter);
+		dyn.setAsyncSupported(true);
 		dyn.addMappingForUrlPatterns(null, false, urlPatterns);
 	}
 	
@@ -167,8 +265,13 @@ public class AppBuilder implements ServletContextListener {
 	@Override
 	public void contextDestroyed(ServletContextEvent sce) {
 		guildMan.shutdown();
+		requestExec.shutdown();
+		notifier.shutdown();
+		outbox.shutdown();
 		svnMan.shutdown();
-		exec.shutdown();
+		engine.shutdown();
+		maintenanceExec.shutdown();
+		notifyExec.shutdown();
 	}
 
 }
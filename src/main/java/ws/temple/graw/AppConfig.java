@@ -28,7 +28,21 @@ public class AppConfig {
 		JDBC_PASSWORD("jdbc.password", ""),
 		SUPER_ADMIN_IDS("super.admin.ids", String[].class, new String[]{}, s -> s.split(",")),
 		PASSWORD_KEYFILE("file.pass.key", File.class, new File("pass.key"), File::new),
-		TOKEN_KEYFILE("file.token.key", File.class, new File("token.key"), File::new);
+		TOKEN_KEYFILE("file.token.key", File.class, new File("token.key"), File::new),
+		SVN_STATUS_TTL("svn.status.ttl", Long.class, 300L, Long::valueOf),
+		SVN_BACKOFF_MAX("svn.backoff.max", Long.class, 3600L, Long::valueOf),
+		SVN_WORKER_THREADS("svn.worker.threads", Integer.class, 8, Integer::valueOf),
+		SVN_WORKER_QUEUE("svn.worker.queue", Integer.class, 256, Integer::valueOf),
+		SVN_HOST_CONCURRENCY("svn.host.concurrency", Integer.class, 2, Integer::valueOf),
+		SVN_CHECKPOINT_INTERVAL("svn.checkpoint.interval", Long.class, 60L, Long::valueOf),
+		NOTIFY_BACKOFF_MAX("notify.backoff.max", Long.class, 300L, Long::valueOf),
+		OUTBOX_BATCH_SIZE("outbox.batch.size", Integer.class, 100, Integer::valueOf),
+		AUTH_CACHE_SIZE("auth.cache.size", Integer.class, 1024, Integer::valueOf),
+		DISCORD_CACHE_TTL("discord.cache.ttl", Long.class, 30L, Long::valueOf),
+		WEB_WORKER_THREADS("web.worker.threads", Integer.class, 8, Integer::valueOf),
+		WEB_WORKER_QUEUE("web.worker.queue", Integer.class, 64, Integer::valueOf),
+		WEB_REQUEST_TIMEOUT("web.request.timeout", Long.class, 30L, Long::valueOf),
+		METRICS_TOKEN("metrics.token", "");
 		
 		/**
 		 * Defines a configuration property.
@@ -0,0 +1,203 @@
+package ws.temple.graw;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ws.temple.graw.metrics.Counter;
+import ws.temple.graw.metrics.Histogram;
+import ws.temple.graw.metrics.Metrics;
+
+/**
+ * Moves the blocking portion of a servlet request off of the container's
+ * request threads. Each request is put into asynchronous mode, its work is
+ * run on a dedicated bounded pool, and its response is rendered once the work
+ * completes, unless the request timed out first.
+ *
+ */
+public class AsyncRequestExecutor {
+	private static final Logger LOG = LoggerFactory.getLogger(AsyncRequestExecutor.class);
+
+	private static final Histogram REQUEST_DURATION = Metrics.histogram("graw_http_request_seconds", "Duration of asynchronously processed requests");
+	private static final Histogram QUEUE_WAIT = Metrics.histogram("graw_http_queue_wait_seconds", "Time requests spend waiting for a worker");
+	private static final Counter REJECTED = Metrics.counter("graw_http_rejected_total", "Number of requests rejected by a saturated pool");
+	private static final Counter TIMEOUTS = Metrics.counter("graw_http_timeouts_total", "Number of requests which timed out");
+	private static final Counter FAILURES = Metrics.counter("graw_http_failures_total", "Number of requests whose work or rendering failed");
+
+	private final ThreadPoolExecutor workers;
+
+	/** How long a request may wait for its work to complete, in milliseconds */
+	private final long timeout;
+
+
+	/**
+	 * Creates a new executor.
+	 *
+	 * @param threads Number of threads performing request work
+	 * @param queueCapacity Maximum number of requests awaiting a thread
+	 * @param timeout How long a request may take before it is failed
+	 * @param unit
+	 */
+	public AsyncRequestExecutor(int threads, int queueCapacity, long timeout, TimeUnit unit) {
+		this.timeout = unit.toMillis(timeout);
+
+		final AtomicInteger count = new AtomicInteger();
+		final ThreadFactory factory = r -> {
+			final Thread thread = new Thread(r, "graw-web-worker-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+		workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity), factory);
+	}
+
+
+	/**
+	 * Performs the passed work off of the request thread, then renders its
+	 * result. The renderer must finish the request, either by dispatching it
+	 * or by completing it. If the work fails, is rejected, or outlasts the
+	 * timeout, an error status is sent instead.
+	 *
+	 * @param req
+	 * @param resp
+	 * @param work
+	 * @param renderer
+	 */
+	public <T> void process(HttpServletRequest req, HttpServletResponse resp, Work<T> work, Renderer<T> renderer) {
+		final long start = System.nanoTime();
+		final AsyncContext async = req.startAsync(req, resp);
+		final AtomicBoolean finished = new AtomicBoolean(false);
+		async.setTimeout(timeout);
+		async.addListener(new AsyncListener() {
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				if(finished.compareAndSet(false, true)) {
+					TIMEOUTS.increment();
+					LOG.warn("Timed out processing {}", req.getRequestURI());
+					fail(async, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				}
+			}
+
+			@Override
+			public void onError(AsyncEvent event) throws IOException {
+				if(finished.compareAndSet(false, true))
+					LOG.error("Error processing " + req.getRequestURI(), event.getThrowable());
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) {
+				REQUEST_DURATION.observeSince(start);
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) {}
+		});
+
+		try {
+			workers.execute(() -> {
+				QUEUE_WAIT.observeSince(start);
+				final T result;
+				try {
+					result = work.perform();
+				}
+				catch(Exception e) {
+					LOG.error("Exception while processing " + req.getRequestURI(), e);
+					FAILURES.increment();
+					if(finished.compareAndSet(false, true))
+						fail(async, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					return;
+				}
+
+				if(finished.compareAndSet(false, true)) {
+					try {
+						renderer.render(result, async);
+					}
+					catch(IOException | ServletException | RuntimeException e) {
+						LOG.error("Exception while rendering " + req.getRequestURI(), e);
+						FAILURES.increment();
+						fail(async, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+					}
+				}
+			});
+		}
+		catch(RejectedExecutionException e) {
+			REJECTED.increment();
+			LOG.warn("Request pool saturated; rejecting {}", req.getRequestURI());
+			if(finished.compareAndSet(false, true))
+				fail(async, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+	}
+
+
+	/**
+	 * Returns an Executor running on this instance's pool, for follow-up work
+	 * not tied to any particular request.
+	 *
+	 * @return
+	 */
+	public Executor getExecutor() {
+		return workers;
+	}
+
+
+	/**
+	 * Stops accepting work and waits briefly for running requests to finish.
+	 *
+	 */
+	public void shutdown() {
+		workers.shutdown();
+		try {
+			if(!workers.awaitTermination(10, TimeUnit.SECONDS))
+				workers.shutdownNow();
+		}
+		catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	private static void fail(AsyncContext async, int status) {
+		try {
+			final HttpServletResponse resp = (HttpServletResponse) async.getResponse();
+			if(!resp.isCommitted())
+				resp.sendError(status);
+		}
+		catch(IOException | IllegalStateException e) {
+			LOG.debug("Unable to send error status", e);
+		}
+		finally {
+			async.complete();
+		}
+	}
+
+
+	/** The blocking portion of a request */
+	@FunctionalInterface
+	public interface Work<T> {
+		T perform() throws Exception;
+	}
+
+	/** Writes or dispatches the response once the work is done */
+	@FunctionalInterface
+	public interface Renderer<T> {
+		void render(T result, AsyncContext async) throws IOException, ServletException;
+	}
+
+}
@@ -3,9 +3,15 @@ package ws.temple.graw;
 import java.lang.ref.WeakReference;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.security.auth.login.LoginException;
 
@@ -29,6 +35,16 @@ public class GuildManager extends ListenerAdapter {
 	/** QueryRunner for persistence */
 	private final QueryRunner<ConfigDAO> runner;
 	
+	/** Configurations of the active servers, keyed by guild ID */
+	private final Map<String,Optional<GuildConfig>> configCache = new ConcurrentHashMap<>();
+	
+	/** IDs of the servers the bot is currently connected to */
+	private final Set<String> connected = ConcurrentHashMap.newKeySet();
+	
+	/* Configuration cache counters */
+	private final LongAdder cacheHits = new LongAdder();
+	private final LongAdder cacheMisses = new LongAdder();
+	
 	/** List of user IDs with super-administrative capacities */
 	private final List<String> sadmins;
 	
@@ -62,9 +78,24 @@ public class GuildManager extends ListenerAdapter {
 	
 	
 	public void initialize() {
-		for(Guild guild : jda.getGuilds()) {
-			registerServer(guild.getId());
-		}
+		runner.inSession(() -> {
+			// Load the configurations of every connected server in one query
+			final Map<String,Optional<GuildConfig>> loaded = new LinkedHashMap<>();
+			synchronized(configCache) {
+				final Map<String,GuildConfig> stored = new HashMap<>();
+				runner.query(dao -> dao.getAllConfigs())
+						.forEach(e -> stored.put(e.getKey(), e.getValue()));
+				
+				for(Guild guild : jda.getGuilds()) {
+					final Optional<GuildConfig> conf = Optional.ofNullable(stored.get(guild.getId()));
+					configCache.put(guild.getId(), conf);
+					connected.add(guild.getId());
+					loaded.put(guild.getId(), conf);
+				}
+			}
+			
+			loaded.forEach(this::activateServer);
+		});
 		
 		jda.addEventListener(new GrawMaintenanceListener());
 	}
@@ -122,10 +153,7 @@ public class GuildManager extends ListenerAdapter {
 	 * @return
 	 */
 	public boolean isConnected(String id) {
-		return jda.getGuilds()
-				.stream()
-				.map(Guild::getId)
-				.anyMatch(gid -> gid.equals(id));
+		return connected.contains(id);
 	}
 	
 	
@@ -141,14 +169,25 @@ public class GuildManager extends ListenerAdapter {
 	
 	/**
 	 * Returns the ServerConfig object corresponding to the passed Guild ID,
-	 * or optionally creates a new one if none exists.
+	 * or optionally creates a new one if none exists. Configurations of
+	 * active servers are served from memory; others are read from the
+	 * database.
 	 * 
 	 * @param id The server ID to retrieve the configuration object for
 	 * @param generate Whether to generate a new instance if none is found
 	 * @return
 	 */
 	public GuildConfig getConfig(String id, boolean generate) {
-		final GuildConfig config = runner.query(dao -> dao.getConfig(id));
+		Optional<GuildConfig> cached = configCache.get(id);
+		if(cached != null) {
+			cacheHits.increment();
+		}
+		else {
+			cacheMisses.increment();
+			cached = Optional.ofNullable(runner.query(dao -> dao.getConfig(id)));
+		}
+		
+		final GuildConfig config = cached.orElse(null);
 		if(config != null)
 			return config;
 		else if(generate)
@@ -168,11 +207,15 @@ public class GuildManager extends ListenerAdapter {
 	 */
 	public void updateConfig(String id, GuildConfig conf) {
 		if(conf != null) {
-			final Optional<GuildConfig> oldConf = runner.doTransaction(dao -> {
-				final GuildConfig old = dao.getConfig(id);
-				dao.putConfig(id, conf);
-				return Optional.ofNullable(old);
-			});
+			final Optional<GuildConfig> oldConf;
+			synchronized(configCache) {
+				oldConf = runner.doTransaction(dao -> {
+					final GuildConfig old = dao.getConfig(id);
+					dao.putConfig(id, conf);
+					return Optional.ofNullable(old);
+				});
+				configCache.replace(id, Optional.of(conf));
+			}
 			
 			Utils.fireListeners(configListeners, sl -> {
 				sl.onConfigChange(id, oldConf, conf);
@@ -189,13 +232,30 @@ public class GuildManager extends ListenerAdapter {
 	 * @return
 	 */
 	private void registerServer(String id) {
-		final GuildConfig conf = getConfig(id, false);
+		final Optional<GuildConfig> conf;
+		synchronized(configCache) {
+			conf = Optional.ofNullable(runner.query(dao -> dao.getConfig(id)));
+			configCache.put(id, conf);
+			connected.add(id);
+		}
+		activateServer(id, conf);
+	}
+	
+	
+	/**
+	 * Notifies listeners that a server whose configuration has been cached
+	 * is now active.
+	 * 
+	 * @param id
+	 * @param conf
+	 */
+	private void activateServer(String id, Optional<GuildConfig> conf) {
 		Utils.fireListeners(statusListeners, sl -> {
-			sl.onGuildActivated(id, Optional.ofNullable(conf));
+			sl.onGuildActivated(id, conf);
 		});
 		
-		if(conf != null) {
-			LOG.debug("Loaded configuration object: {}", conf);
+		if(conf.isPresent()) {
+			LOG.debug("Loaded configuration object: {}", conf.get());
 			LOG.info("Configured server activated: {}({})", jda.getGuildById(id).getName(), id);
 		}
 		else {
@@ -211,6 +271,8 @@ public class GuildManager extends ListenerAdapter {
 	 * @return
 	 */
 	private GuildManager unregisterServer(String id) {
+		connected.remove(id);
+		configCache.remove(id);
 		Utils.fireListeners(statusListeners, sl -> {
 			sl.onGuildDeactivated(id);
 		});
@@ -220,6 +282,26 @@ public class GuildManager extends ListenerAdapter {
 	}
 	
 	
+	/**
+	 * Returns the number of configuration lookups served from memory.
+	 * 
+	 * @return
+	 */
+	public long getConfigCacheHits() {
+		return cacheHits.sum();
+	}
+	
+	
+	/**
+	 * Returns the number of configuration lookups which went to the database.
+	 * 
+	 * @return
+	 */
+	public long getConfigCacheMisses() {
+		return cacheMisses.sum();
+	}
+	
+	
 	/**
 	 * Registers a listener for configuration change events.
 	 * 
@@ -0,0 +1,227 @@
+package ws.temple.graw.auth;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.util.store.DataStore;
+import com.google.api.client.util.store.DataStoreFactory;
+
+/**
+ * Bounded, expiry-aware cache in front of another credential store. Reads are
+ * served from memory until the cached access token expires or the entry is
+ * pushed out by more recently used ones; writes and deletions go through to
+ * the backing store immediately, one at a time, so that concurrent writes of
+ * the same credential can't leave the cache holding an older value than the
+ * store.
+ *
+ */
+public class CachingCredentialStore implements DataStore<StoredCredential> {
+	private final DataStore<StoredCredential> store;
+	
+	/** Cached credentials keyed by identifier, in least-recently-used order */
+	private final Map<String,StoredCredential> cache;
+	
+	/** Count of writes, so that loads overtaken by a write aren't cached; guarded by cache */
+	private long writes = 0;
+	
+	/** Held across each write to the backing store and the cache update following it */
+	private final Object writeLock = new Object();
+	
+	/* Counters */
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+	
+	
+	/**
+	 * Creates a cache in front of the passed store.
+	 * 
+	 * @param store The backing store
+	 * @param capacity The maximum number of credentials to hold in memory
+	 */
+	public CachingCredentialStore(DataStore<StoredCredential> store, int capacity) {
+		this.store = store;
+		this.cache = new LinkedHashMap<String,StoredCredential>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String,StoredCredential> eldest) {
+				if(size() > capacity) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+	
+	@Override
+	public DataStoreFactory getDataStoreFactory() {
+		return store.getDataStoreFactory();
+	}
+
+	@Override
+	public String getId() {
+		return store.getId();
+	}
+
+	@Override
+	public int size() throws IOException {
+		return store.size();
+	}
+
+	@Override
+	public boolean isEmpty() throws IOException {
+		return store.isEmpty();
+	}
+
+	@Override
+	public boolean containsKey(String key) throws IOException {
+		return store.containsKey(key);
+	}
+
+	@Override
+	public boolean containsValue(StoredCredential value) throws IOException {
+		return store.containsValue(value);
+	}
+
+	@Override
+	public Set<String> keySet() throws IOException {
+		return store.keySet();
+	}
+
+	@Override
+	public Collection<StoredCredential> values() throws IOException {
+		return store.values();
+	}
+
+	@Override
+	public StoredCredential get(String key) throws IOException {
+		final long writesBefore;
+		synchronized(cache) {
+			writesBefore = writes;
+			final StoredCredential cached = cache.get(key);
+			if(cached != null) {
+				if(!isExpired(cached)) {
+					hits.increment();
+					return cached;
+				}
+				cache.remove(key);
+				evictions.increment();
+			}
+		}
+		
+		misses.increment();
+		final StoredCredential loaded = store.get(key);
+		if(loaded != null && !isExpired(loaded)) {
+			synchronized(cache) {
+				if(writes == writesBefore)
+					cache.put(key, loaded);
+			}
+		}
+		return loaded;
+	}
+
+	@Override
+	public DataStore<StoredCredential> set(String key, StoredCredential value) throws IOException {
+		synchronized(writeLock) {
+			invalidate(key);
+			store.set(key, value);
+			synchronized(cache) {
+				writes++;
+				if(value != null && !isExpired(value))
+					cache.put(key, value);
+				else
+					cache.remove(key);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public DataStore<StoredCredential> clear() throws IOException {
+		synchronized(writeLock) {
+			invalidate(null);
+			store.clear();
+			invalidate(null);
+		}
+		return this;
+	}
+
+	@Override
+	public DataStore<StoredCredential> delete(String key) throws IOException {
+		synchronized(writeLock) {
+			invalidate(key);
+			store.delete(key);
+			invalidate(key);
+		}
+		return this;
+	}
+	
+	
+	/**
+	 * Drops the cached credential for the passed key, or all of them if it is
+	 * null, and makes any load in progress discard its result. Writes do this
+	 * both before touching the backing store, so that readers stop seeing the
+	 * old value, and after, so that nothing loaded in the meantime survives.
+	 * 
+	 * @param key
+	 */
+	private void invalidate(String key) {
+		synchronized(cache) {
+			writes++;
+			if(key == null)
+				cache.clear();
+			else
+				cache.remove(key);
+		}
+	}
+	
+	
+	/**
+	 * Returns whether the passed credential's access token has expired.
+	 * Credentials with no known expiry are considered current.
+	 * 
+	 * @param cred
+	 * @return
+	 */
+	private static boolean isExpired(StoredCredential cred) {
+		final Long expiry = cred.getExpirationTimeMilliseconds();
+		return (expiry != null && expiry <= System.currentTimeMillis());
+	}
+	
+	
+	/** Returns the number of lookups served from memory */
+	public long getHitCount() {
+		return hits.sum();
+	}
+	
+	/** Returns the number of lookups which went to the backing store */
+	public long getMissCount() {
+		return misses.sum();
+	}
+	
+	/** Returns the fraction of lookups served from memory */
+	public double getHitRatio() {
+		final long h = hits.sum();
+		final long total = h + misses.sum();
+		return (total > 0 ? (double) h / total : 0.0);
+	}
+	
+	/** Returns the number of entries dropped for expiry or lack of space */
+	public long getEvictionCount() {
+		return evictions.sum();
+	}
+	
+	/** Returns the number of credentials currently held in memory */
+	public int getCachedCount() {
+		synchronized(cache) {
+			return cache.size();
+		}
+	}
+}
@@ -1,44 +1,286 @@
 package ws.temple.graw.client;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
 import com.google.api.client.http.HttpRequestFactory;
 import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.client.http.HttpTransport;
 
+import ws.temple.graw.metrics.Histogram;
+import ws.temple.graw.metrics.Metrics;
+
+/**
+ * Client for the user-facing portion of the Discord REST API. Responses are
+ * cached per access token for a short time, so that the several lookups made
+ * while serving a single page visit only cost one round trip each.
+ *
+ * When Discord responds with 429 Too Many Requests, further requests for the
+ * same resource are held off until the indicated time has passed. In the
+ * meantime, a previously fetched response is served if one is available and
+ * no more than a few TTLs old; otherwise the request waits out a short limit
+ * or fails.
+ *
+ */
 public class UserAPI {
+	private static final Logger LOG = LoggerFactory.getLogger(UserAPI.class);
+
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	/** Delay to assume when a 429 response doesn't say how long to wait */
+	private static final long DEFAULT_RETRY_AFTER = 1000;
+
+	/** Longest a request will be held to wait out a rate limit, in milliseconds */
+	private static final long MAX_RATE_LIMIT_WAIT = 2000;
+
+	/** Number of attempts made before giving up on a rate-limited request */
+	private static final int MAX_ATTEMPTS = 2;
+
+	/** Age, in TTLs, beyond which a cached response isn't served even while rate limited */
+	private static final int MAX_STALE_TTLS = 5;
 
-	private final HttpTransport transport;
+	/** Maximum number of responses to hold in memory */
+	private static final int CACHE_CAPACITY = 1024;
+
+	private static final Histogram REQUEST_DURATION = Metrics.histogram("graw_discord_api_seconds", "Duration of requests to the Discord REST API");
+
+	private final HttpRequestFactory factory;
 	private final ObjectMapper mapper;
-	
+
 	private final String userQueryUrl;
 	private final String userGuildsQueryUrl;
-	
-	public UserAPI(HttpTransport transport, String baseApiUrl) {
-		this.transport = transport;
+
+	/** How long a cached response is considered fresh, in milliseconds */
+	private final long ttl;
+
+	/** Cached responses keyed by access token and URL, in least-recently-used order */
+	private final Map<String,CachedResponse> cache = new LinkedHashMap<String,CachedResponse>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String,CachedResponse> eldest) {
+			return size() > CACHE_CAPACITY;
+		}
+	};
+
+	/** Times before which rate-limited requests mustn't be retried, keyed as the cache is; expired entries are swept whenever one is added */
+	private final Map<String,Long> blockedUntil = new ConcurrentHashMap<>();
+
+	/* Counters */
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder rateLimited = new LongAdder();
+
+
+	/**
+	 * Creates a new client.
+	 *
+	 * @param transport The transport to issue requests on; should pool
+	 *                   connections, as it is shared by all requests
+	 * @param baseApiUrl
+	 * @param ttl How long responses should be cached
+	 * @param unit
+	 */
+	public UserAPI(HttpTransport transport, String baseApiUrl, long ttl, TimeUnit unit) {
+		this.factory = transport.createRequestFactory();
+		this.ttl = unit.toMillis(ttl);
 
 		userQueryUrl = baseApiUrl + "/users/@me";
 		userGuildsQueryUrl = baseApiUrl + "/users/@me/guilds";
 		mapper = new ObjectMapper();
 	}
-	
+
 	public User getUser(Credential cred) throws IOException {
 		return executeQuery(cred, userQueryUrl, User.class);
 	}
-	
+
 	public List<UserGuild> getUserGuilds(Credential cred) throws IOException {
-		return Arrays.asList(executeQuery(cred, userGuildsQueryUrl, UserGuild[].class));
+		return Collections.unmodifiableList(Arrays.asList(executeQuery(cred, userGuildsQueryUrl, UserGuild[].class)));
 	}
-	
+
 	public <T> T executeQuery(Credential cred, String query, Class<T> clazz) throws IOException {
-		final HttpRequestFactory factory = transport.createRequestFactory(cred);
-		final HttpResponse resp = factory.buildGetRequest(new GenericUrl(query)).execute();
-		return mapper.readValue(resp.getContent(), clazz);
+		final String key = cred.getAccessToken() + " " + query;
+		final CachedResponse cached;
+		synchronized(cache) {
+			cached = cache.get(key);
+		}
+
+		if(cached != null && cached.isFresh()) {
+			hits.increment();
+			return clazz.cast(cached.value);
+		}
+
+		misses.increment();
+		final Object value = fetch(cred, key, query, clazz, cached);
+		if(cached == null || value != cached.value) {
+			synchronized(cache) {
+				cache.put(key, new CachedResponse(value));
+			}
+		}
+		return clazz.cast(value);
+	}
+
+
+	/**
+	 * Requests the passed URL, respecting any rate limit in effect for it.
+	 *
+	 * @param cred
+	 * @param key
+	 * @param query
+	 * @param clazz
+	 * @param cached The last response received for the URL, or null
+	 * @return
+	 * @throws IOException
+	 */
+	private Object fetch(Credential cred, String key, String query, Class<?> clazz, CachedResponse cached) throws IOException {
+		final CachedResponse stale = (cached != null && cached.isServableStale() ? cached : null);
+		for(int attempt = 1; ; attempt++) {
+			final long wait = getBlockedMillis(key);
+			if(wait > 0) {
+				if(stale != null) {
+					LOG.debug("Serving stale response for {} while rate limited", query);
+					return stale.value;
+				}
+				if(wait > MAX_RATE_LIMIT_WAIT)
+					throw new IOException("Rate limited by Discord for another " + wait + "ms");
+
+				try {
+					Thread.sleep(wait);
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while waiting out rate limit");
+				}
+			}
+
+			final HttpRequest req = factory.buildGetRequest(new GenericUrl(query));
+			cred.initialize(req);
+			req.setThrowExceptionOnExecuteError(false);
+
+			final long start = System.nanoTime();
+			final HttpResponse resp;
+			try {
+				resp = req.execute();
+			}
+			finally {
+				REQUEST_DURATION.observeSince(start);
+			}
+			if(resp.getStatusCode() == TOO_MANY_REQUESTS) {
+				final long retryAfter = parseRetryAfter(resp.getHeaders().getRetryAfter());
+				resp.ignore();
+				rateLimited.increment();
+				final long now = System.currentTimeMillis();
+				blockedUntil.values().removeIf(until -> until <= now);
+				blockedUntil.put(key, now + retryAfter);
+				LOG.warn("Rate limited by Discord on {} for {}ms", query, retryAfter);
+
+				if(attempt >= MAX_ATTEMPTS && stale == null)
+					throw new IOException("Rate limited by Discord on " + query);
+				continue;
+			}
+
+			if(!resp.isSuccessStatusCode()) {
+				final HttpResponseException ex = new HttpResponseException(resp);
+				resp.ignore();
+				throw ex;
+			}
+
+			blockedUntil.remove(key);
+			return mapper.readValue(resp.getContent(), clazz);
+		}
+	}
+
+
+	/**
+	 * Returns how much longer requests for the passed key must be held off,
+	 * in milliseconds.
+	 *
+	 * @param key
+	 * @return
+	 */
+	private long getBlockedMillis(String key) {
+		final Long until = blockedUntil.get(key);
+		if(until == null)
+			return 0;
+
+		final long remaining = until - System.currentTimeMillis();
+		if(remaining <= 0)
+			blockedUntil.remove(key, until);
+		return remaining;
+	}
+
+
+	/**
+	 * Parses the Retry-After header of a 429 response. Discord gives the
+	 * delay in milliseconds.
+	 *
+	 * @param header
+	 * @return
+	 */
+	private static long parseRetryAfter(String header) {
+		if(header != null) {
+			try {
+				return Math.max(0, Long.parseLong(header.trim()));
+			}
+			catch(NumberFormatException e) {
+				LOG.debug("Unparseable Retry-After header: {}", header);
+			}
+		}
+		return DEFAULT_RETRY_AFTER;
+	}
+
+
+	/** Returns the number of lookups served from the cache */
+	public long getCacheHits() {
+		return hits.sum();
+	}
+
+	/** Returns the number of lookups which went to Discord */
+	public long getCacheMisses() {
+		return misses.sum();
 	}
-	
+
+	/** Returns the number of 429 responses received */
+	public long getRateLimitedCount() {
+		return rateLimited.sum();
+	}
+
+
+	/**
+	 * A response body along with the time it was received.
+	 *
+	 */
+	private class CachedResponse {
+		private final Object value;
+		private final long fetched = System.currentTimeMillis();
+
+		CachedResponse(Object value) {
+			this.value = value;
+		}
+
+		boolean isFresh() {
+			return System.currentTimeMillis() - fetched < ttl;
+		}
+
+		boolean isServableStale() {
+			return System.currentTimeMillis() - fetched < ttl * MAX_STALE_TTLS;
+		}
+	}
+
 }
@@ -16,6 +16,7 @@ import javax.servlet.http.HttpServletResponse;
 import com.google.api.client.auth.oauth2.Credential;
 
 import net.dv8tion.jda.entities.Guild;
+import ws.temple.graw.AsyncRequestExecutor;
 import ws.temple.graw.GuildManager;
 import ws.temple.graw.ServletConstants;
 import ws.temple.graw.Utils;
@@ -26,17 +27,26 @@ import ws.temple.graw.client.UserGuild;
 public class BotConfigServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
 	
+	private static final String VIEW_CONFIG = "/bot-config.view.jsp";
+	private static final String VIEW_SELECT = "/server-select.view.jsp";
+	
 	private final GuildManager guildMan;
 	private final UserAPI userApi;
 	
+	/** Executor for building pages off of the request thread */
+	private final AsyncRequestExecutor executor;
+	
 	
-	public BotConfigServlet(GuildManager bot, UserAPI userApi) {
+	public BotConfigServlet(GuildManager bot, UserAPI userApi, AsyncRequestExecutor executor) {
 		this.guildMan = bot;
 		this.userApi = userApi;
+		this.executor = executor;
 	}
 
 	/**
-	 * Directs an incoming request to the appropriate handler.
+	 * Directs an incoming request to the appropriate handler. Page models are
+	 * built asynchronously, since doing so calls out to Discord, and the
+	 * request is then dispatched to the resulting view.
 	 * 
 	 */
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
@@ -48,12 +58,12 @@ public class BotConfigServlet extends HttpServlet {
 		}
 		
 		final Credential cred = (Credential) request.getAttribute(ServletConstants.REQ_ATTR_CREDENTIAL);
-		if(request.getParameter("server") != null) {
-			handleConfigPage(request, response, cred, null);
-		}
-		else {
-			handleSelectPage(request, response, cred);
-		}
+		executor.process(request, response, () -> {
+			if(request.getParameter("server") != null)
+				return handleConfigPage(request, response, cred, null);
+			else
+				return handleSelectPage(request, response, cred);
+		}, (view, async) -> async.dispatch(view));
 	}
 	
 	/**
@@ -64,10 +74,11 @@ public class BotConfigServlet extends HttpServlet {
 	 * @param resp
 	 * @param cred
 	 * @param errors Any errors that occurred while validating the POST submission, or null
+	 * @return The view to render
 	 * @throws ServletException
 	 * @throws IOException
 	 */
-	public void handleConfigPage(HttpServletRequest req, HttpServletResponse resp, Credential cred, Set<String> errors) throws ServletException, IOException {
+	public String handleConfigPage(HttpServletRequest req, HttpServletResponse resp, Credential cred, Set<String> errors) throws ServletException, IOException {
 		final User user = userApi.getUser(cred);
 		final String serverID = req.getParameter("server");
 		final Guild server = guildMan.getDiscord().getGuildById(serverID);
@@ -75,8 +86,7 @@ public class BotConfigServlet extends HttpServlet {
 		
 		// The user probably fucked something up, so we bail
 		if(server == null) {
-			handleSelectPage(req, resp, cred);
-			return;
+			return handleSelectPage(req, resp, cred);
 		}
 		
 		final Optional<String> csrfTok = Stream.of(req.getCookies())
@@ -90,7 +100,7 @@ public class BotConfigServlet extends HttpServlet {
 				.setCsrfToken(csrfTok.orElse(""));
 		
 		req.setAttribute("model", model);
-		req.getRequestDispatcher("bot-config.view.jsp").forward(req, resp);
+		return VIEW_CONFIG;
 	}
 
 	/**
@@ -98,10 +108,11 @@ public class BotConfigServlet extends HttpServlet {
 	 * @param req
 	 * @param resp
 	 * @param cred
+	 * @return The view to render
 	 * @throws ServletException
 	 * @throws IOException
 	 */
-	public void handleSelectPage(HttpServletRequest req, HttpServletResponse resp, Credential cred) throws ServletException, IOException {
+	public String handleSelectPage(HttpServletRequest req, HttpServletResponse resp, Credential cred) throws ServletException, IOException {
 		final User user = userApi.getUser(cred);
 		final List<UserGuild> servers = userApi.getUserGuilds(cred)
 				.stream()
@@ -113,7 +124,7 @@ public class BotConfigServlet extends HttpServlet {
 		
 		
 		req.setAttribute("model", model);
-		req.getRequestDispatcher("server-select.view.jsp").forward(req, resp);
+		return VIEW_SELECT;
 	}
 
 }
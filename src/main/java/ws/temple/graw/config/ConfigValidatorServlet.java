@@ -3,13 +3,20 @@ package ws.temple.graw.config;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Stream;
 
 import javax.servlet.ServletException;
@@ -23,18 +30,20 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.github.jknack.handlebars.Handlebars;
 import com.google.api.client.auth.oauth2.Credential;
 
 import net.dv8tion.jda.entities.Guild;
 import net.dv8tion.jda.entities.Role;
 import net.dv8tion.jda.entities.TextChannel;
+import ws.temple.graw.AsyncRequestExecutor;
 import ws.temple.graw.GuildManager;
 import ws.temple.graw.ServletConstants;
 import ws.temple.graw.client.UserAPI;
 import ws.temple.graw.crypt.Crypter;
 import ws.temple.graw.crypt.CrypterException;
 import ws.temple.graw.svn.SVNManager;
+import ws.temple.graw.svn.SVNMonitor;
+import ws.temple.graw.svn.SVNRevisionFormatter;
 import ws.temple.graw.svn.SVNStatus;
 
 public class ConfigValidatorServlet extends HttpServlet {
@@ -52,12 +61,13 @@ public class ConfigValidatorServlet extends HttpServlet {
 	private static final String PARAM_MESSAGE_FORMAT = "fmt_msg";
 	private static final String PARAM_SERVER = "server";
 	private static final String PARAM_IDENTITY = "identity";
+	private static final String PARAM_CHECK = "check";
 	
 	private static final int MINIMUM_QUERY_INTERVAL = 90;
-
-	/** Handlebars instance for ensuring message format strings are parseable */
-	private final Handlebars handlebars = new Handlebars();
 	
+	/** How long the result of a repository check is kept for collection */
+	private static final long CHECK_RETENTION = TimeUnit.MINUTES.toMillis(5);
+
 	/** Mapper for creating the JSON response */
 	private final ObjectMapper mapper = new ObjectMapper();
 	
@@ -66,24 +76,44 @@ public class ConfigValidatorServlet extends HttpServlet {
 	private final UserAPI api;
 	private final Crypter crypt;
 	
-	public ConfigValidatorServlet(GuildManager guildMan, SVNManager svnMan, UserAPI api, Crypter crypt) {
+	/** Executor for validating submissions off of the request thread */
+	private final AsyncRequestExecutor executor;
+	
+	/** Repository checks started by successful submissions, keyed by check ID */
+	private final Map<String,RepositoryCheck> checks = new ConcurrentHashMap<>();
+	
+	public ConfigValidatorServlet(GuildManager guildMan, SVNManager svnMan, UserAPI api, Crypter crypt, AsyncRequestExecutor executor) {
 		this.guildMan = guildMan;
 		this.svnMan = svnMan;
 		this.api = api;
 		this.crypt = crypt;
+		this.executor = executor;
 	}
 	
+	/**
+	 * Report the outcome of a repository check if one is requested, or
+	 * otherwise treat the request as a submission.
+	 * 
+	 */
 	@Override
 	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-		doPost(req, resp);
+		final String checkId = req.getParameter(PARAM_CHECK);
+		if(checkId != null)
+			resp.getWriter().write(mapper.writeValueAsString(buildCheckResponse(checkId)));
+		else
+			doPost(req, resp);
 	}
 
 	/**
-	 * Serialize the response to a JSON object and send it.
+	 * Validate the submission asynchronously, then serialize the response to
+	 * a JSON object and send it.
 	 * 
 	 */
 	protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		response.getWriter().write(mapper.writeValueAsString(buildResponse(request)));
+		executor.process(request, response, () -> buildResponse(request), (result, async) -> {
+			async.getResponse().getWriter().write(mapper.writeValueAsString(result));
+			async.complete();
+		});
 	}
 	
 	/**
@@ -135,10 +165,72 @@ public class ConfigValidatorServlet extends HttpServlet {
 			response.put("errors", errors);
 		}
 		
-		// Save the config and verify SVN
+		// Save the config, which swaps the guild's monitor over without waiting
+		// on the repository, and start verifying SVN in the background
 		else {
 			guildMan.updateConfig(serverId, config);
-			final SVNStatus status = svnMan.getMonitor(serverId).getStatus();
+			response.put("status", "success");
+			response.put("message", "<strong>Configuration changes applied successfully.</strong> Checking the repository connection...");
+			response.put("check", startRepositoryCheck(serverId));
+		}
+		
+		return response;
+	}
+	
+	/**
+	 * Begin checking the connection to the specified server's repository,
+	 * and return an ID under which the result can be collected.
+	 * 
+	 * @param serverId
+	 * @return
+	 */
+	private String startRepositoryCheck(String serverId) {
+		final long now = System.currentTimeMillis();
+		checks.values().removeIf(c -> now - c.started > CHECK_RETENTION);
+		
+		final SVNMonitor monitor = svnMan.getMonitor(serverId);
+		CompletableFuture<SVNStatus> status;
+		try {
+			status = CompletableFuture.supplyAsync(monitor::getStatus, executor.getExecutor());
+		}
+		catch(RejectedExecutionException e) {
+			status = new CompletableFuture<>();
+			status.completeExceptionally(e);
+		}
+		
+		final String id = UUID.randomUUID().toString();
+		checks.put(id, new RepositoryCheck(now, status));
+		return id;
+	}
+	
+	/**
+	 * Construct the response to a poll for the result of a repository check.
+	 * 
+	 * @param checkId
+	 * @return
+	 */
+	private Map<String,Object> buildCheckResponse(String checkId) {
+		final Map<String,Object> response = new HashMap<>();
+		final RepositoryCheck check = checks.get(checkId);
+		if(check == null) {
+			response.put("status", "error");
+			response.put("message", "The repository check has expired. Reload the page to check again.");
+		}
+		else if(!check.status.isDone()) {
+			response.put("status", "pending");
+		}
+		else {
+			checks.remove(checkId);
+			
+			SVNStatus status;
+			try {
+				status = check.status.join();
+			}
+			catch(CompletionException | CancellationException e) {
+				LOG.error("Exception while checking repository", e);
+				status = SVNStatus.NO_CONNECTION;
+			}
+			
 			if(status == SVNStatus.NORMAL) {
 				response.put("status", "success");
 				response.put("message", "<strong>Configuration changes applied successfully.</strong>");
@@ -148,7 +240,7 @@ public class ConfigValidatorServlet extends HttpServlet {
 				
 				if(status == SVNStatus.BAD_CREDENTIALS)
 					response.put("message", "The changes were applied successfully, but the supplied credentials were rejected by the repository.");
-				else if(status == SVNStatus.NO_CONNECTION)
+				else
 					response.put("message", "The changes were applied successfully, but no connection to the repository could be established at this time.");
 			}
 		}
@@ -180,7 +272,7 @@ public class ConfigValidatorServlet extends HttpServlet {
 	 * @param errors
 	 * @return
 	 */
-	private boolean checkFormFields(Map<String,String[]> params, Guild server, GuildConfig config, List<String> errors) {
+	boolean checkFormFields(Map<String,String[]> params, Guild server, GuildConfig config, List<String> errors) {
 		boolean valid = true;
 		for (Entry<String, String[]> entry : params.entrySet()) {
 			final String key = entry.getKey();
@@ -221,14 +313,18 @@ public class ConfigValidatorServlet extends HttpServlet {
 					valid = false;
 				}
 				else if(!value.isEmpty()) {
+					final char[] password = value.toCharArray();
 					try {
-						config.setPassword(crypt.encrypt(value.toCharArray(), "UTF-8"));
+						config.setPassword(crypt.encrypt(password, "UTF-8"));
 					}
 					catch (CrypterException e) {
 						LOG.error("Error while encrypting password", e);
 						errors.add(PARAM_PASSWORD);
 						valid = false;
 					}
+					finally {
+						Arrays.fill(password, '\0');
+					}
 				}
 				
 				break;
@@ -244,12 +340,8 @@ public class ConfigValidatorServlet extends HttpServlet {
 				break;
 
 			case PARAM_LOG_CHANNEL:
-				final String chan = server.getTextChannels()
-						.stream()
-						.map(TextChannel::getId)
-						.filter(id -> id.equals(value))
-						.findFirst()
-						.orElse(null);
+				final TextChannel channel = guildMan.getDiscord().getTextChannelById(value);
+				final String chan = (channel != null && channel.getGuild().getId().equals(server.getId()) ? channel.getId() : null);
 				if(chan != null || parseNonNegativeInteger(value) == 0) {
 					config.setLogChannel(chan);
 				}
@@ -260,12 +352,8 @@ public class ConfigValidatorServlet extends HttpServlet {
 				break;
 				
 			case PARAM_MAINTENANCE_ROLE:
-				final String role = server.getRoles()
-						.stream()
-						.map(Role::getId)
-						.filter(id -> id.equals(value))
-						.findFirst()
-						.orElse(null);
+				final Role maintenance = server.getRoleById(value);
+				final String role = (maintenance != null ? maintenance.getId() : null);
 				if(role != null || parseNonNegativeInteger(value) == 0) {
 					config.setMaintenanceRole(role);
 				}
@@ -327,7 +415,7 @@ public class ConfigValidatorServlet extends HttpServlet {
 	private boolean validateDateFormat(String fmt) {
 		boolean success = true;
 		try {
-			new SimpleDateFormat(fmt);
+			SVNRevisionFormatter.validateDateFormat(fmt);
 		}
 		catch (IllegalArgumentException e) {
 			success = false;
@@ -344,11 +432,25 @@ public class ConfigValidatorServlet extends HttpServlet {
 	private boolean validateMessageFormat(String fmt) {
 		boolean success = true;
 		try {
-			handlebars.compileInline(fmt);
+			SVNRevisionFormatter.validateMessageFormat(fmt);
 		}
 		catch (IOException e) {
 			success = false;
 		}
 		return success;
 	}
+
+	/**
+	 * A repository check in progress or awaiting collection.
+	 *
+	 */
+	private static class RepositoryCheck {
+		private final long started;
+		private final CompletableFuture<SVNStatus> status;
+		
+		RepositoryCheck(long started, CompletableFuture<SVNStatus> status) {
+			this.started = started;
+			this.status = status;
+		}
+	}
 }
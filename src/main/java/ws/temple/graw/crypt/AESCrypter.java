@@ -2,7 +2,12 @@ package ws.temple.graw.crypt;
 
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -17,16 +22,29 @@ import javax.crypto.ShortBufferException;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 
-public class AESCrypter implements Crypter {
+import ws.temple.graw.metrics.Counter;
+import ws.temple.graw.metrics.Histogram;
+import ws.temple.graw.metrics.Metrics;
+
+public class AESCrypter implements BufferCrypter {
 	
 	private static final int BLOCK_LENGTH = 16;
+	private static final String TRANSFORMATION = "AES/CBC/PKCS5Padding";
+	
+	private static final Histogram ENCRYPT_DURATION = Metrics.histogram("graw_crypt_seconds", "Duration of cipher operations", "op", "encrypt");
+	private static final Histogram DECRYPT_DURATION = Metrics.histogram("graw_crypt_seconds", "Duration of cipher operations", "op", "decrypt");
+	private static final Counter CIPHERS_CREATED = Metrics.counter("graw_crypt_ciphers_created_total", "Number of per-thread Cipher instances created");
+	
+	/** Per-thread buffers for intermediate plaintext, wiped after each use */
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
 
-	private final Cipher cipher;
+	/** Cipher instances confined to the threads using them, as Cipher isn't thread-safe */
+	private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(AESCrypter::createCipher);
 	private final SecretKey key;
 	
 	public AESCrypter(SecretKey key) throws CrypterException {
 		try {
-			this.cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+			Cipher.getInstance(TRANSFORMATION);
 			this.key = key;
 		} catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
 			throw new CrypterException("Unable to retrieve cipher instance", e);
@@ -40,61 +58,200 @@ public class AESCrypter implements Crypter {
 	
 	@Override
 	public byte[] encrypt(char[] plaintext, String charset) throws CrypterException {
-		final ByteBuffer data = Charset.forName(charset).encode(CharBuffer.wrap(plaintext));
-		return encrypt(data).array();
+		final CharsetEncoder encoder = Charset.forName(charset).newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		final ByteBuffer data = SCRATCH.get().bytes((int) Math.ceil(encoder.maxBytesPerChar() * plaintext.length));
+		try {
+			checkResult(encoder.encode(CharBuffer.wrap(plaintext), data, true));
+			checkResult(encoder.flush(data));
+			data.flip();
+			
+			final byte[] ciphertext = new byte[getEncryptedLength(data.remaining())];
+			encrypt(data, ByteBuffer.wrap(ciphertext));
+			return ciphertext;
+		}
+		finally {
+			wipe(data);
+		}
 	}
 	
 	@Override
 	public char[] decrypt(byte[] ciphertext, String charset) throws CrypterException {
-		return Charset.forName(charset).decode(decrypt(ByteBuffer.wrap(ciphertext))).array();
+		final Scratch scratch = SCRATCH.get();
+		final ByteBuffer data = scratch.bytes(getMaxDecryptedLength(ciphertext.length));
+		CharBuffer chars = null;
+		try {
+			decrypt(ByteBuffer.wrap(ciphertext), data);
+			data.flip();
+			
+			final CharsetDecoder decoder = Charset.forName(charset).newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			chars = scratch.chars((int) Math.ceil(decoder.maxCharsPerByte() * data.remaining()));
+			checkResult(decoder.decode(data, chars, true));
+			checkResult(decoder.flush(chars));
+			chars.flip();
+			
+			final char[] plaintext = new char[chars.remaining()];
+			chars.get(plaintext);
+			return plaintext;
+		}
+		finally {
+			wipe(data);
+			if(chars != null)
+				wipe(chars);
+		}
 	}
 	
 	public byte[] encrypt(byte[] plaintext) throws CrypterException {
-		return encrypt(ByteBuffer.wrap(plaintext)).array();
+		final byte[] ciphertext = new byte[getEncryptedLength(plaintext.length)];
+		encrypt(ByteBuffer.wrap(plaintext), ByteBuffer.wrap(ciphertext));
+		return ciphertext;
 	}
 	
 	public byte[] decrypt(byte[] ciphertext) throws CrypterException {
-		return decrypt(ByteBuffer.wrap(ciphertext)).array();
+		final ByteBuffer data = SCRATCH.get().bytes(getMaxDecryptedLength(ciphertext.length));
+		try {
+			decrypt(ByteBuffer.wrap(ciphertext), data);
+			return Arrays.copyOf(data.array(), data.position());
+		}
+		finally {
+			wipe(data);
+		}
 	}
 	
 	public ByteBuffer encrypt(ByteBuffer plaintext) throws CrypterException {
-		ByteBuffer ciphertext = null;
+		final ByteBuffer ciphertext = ByteBuffer.allocate(getEncryptedLength(plaintext.remaining()));
+		encrypt(plaintext, ciphertext);
+		ciphertext.flip();
+		return ciphertext;
+	}
+	
+	public ByteBuffer decrypt(ByteBuffer ciphertext) throws CrypterException {
+		final ByteBuffer plaintext = ByteBuffer.allocate(getMaxDecryptedLength(ciphertext.remaining()));
+		decrypt(ciphertext, plaintext);
+		plaintext.flip();
+		return plaintext;
+	}
+	
+	@Override
+	public int encrypt(ByteBuffer plaintext, ByteBuffer out) throws CrypterException {
+		if(out.remaining() < getEncryptedLength(plaintext.remaining()))
+			throw new CrypterException("Output buffer too small for ciphertext", null);
+		
+		final long startNanos = System.nanoTime();
 		try {
-			final int cipherLength = (plaintext.remaining() / BLOCK_LENGTH + 1) * BLOCK_LENGTH;
-			
-			synchronized(cipher) {
-				cipher.init(Cipher.ENCRYPT_MODE, key);
-				ciphertext = ByteBuffer.allocate(BLOCK_LENGTH + cipherLength).put(cipher.getIV());
-				cipher.doFinal(plaintext, ciphertext);
-			}
-			
-			ciphertext.flip();
+			final int start = out.position();
+			final Cipher cipher = this.cipher.get();
+			cipher.init(Cipher.ENCRYPT_MODE, key);
+			out.put(cipher.getIV());
+			cipher.doFinal(plaintext, out);
+			return out.position() - start;
 		}
 		catch (InvalidKeyException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
-			throw new CrypterException("Exception while performing decryption", e);
+			throw new CrypterException("Exception while performing encryption", e);
+		}
+		finally {
+			ENCRYPT_DURATION.observeSince(startNanos);
 		}
-		return ciphertext;
 	}
 	
-	public ByteBuffer decrypt(ByteBuffer ciphertext) throws CrypterException {
-		ByteBuffer plaintext = null;
+	@Override
+	public int decrypt(ByteBuffer ciphertext, ByteBuffer out) throws CrypterException {
+		if(ciphertext.remaining() < 2 * BLOCK_LENGTH)
+			throw new CrypterException("Ciphertext too short", null);
+		if(out.remaining() < getMaxDecryptedLength(ciphertext.remaining()))
+			throw new CrypterException("Output buffer too small for plaintext", null);
+		
+		final long startNanos = System.nanoTime();
 		try {
 			final byte[] initVector = new byte[BLOCK_LENGTH];
 			ciphertext.get(initVector);
-			plaintext = ByteBuffer.allocate(ciphertext.remaining());
 			
-			synchronized(cipher) {
-				cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(initVector));
-				cipher.doFinal(ciphertext, plaintext);
-			}
-			
-			plaintext.flip();
+			final int start = out.position();
+			final Cipher cipher = this.cipher.get();
+			cipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(initVector));
+			cipher.doFinal(ciphertext, out);
+			return out.position() - start;
 		}
 		catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException | ShortBufferException e) {
-			throw new CrypterException("Exception while performing encryption", e);
+			throw new CrypterException("Exception while performing decryption", e);
+		}
+		finally {
+			DECRYPT_DURATION.observeSince(startNanos);
+		}
+	}
+	
+	@Override
+	public int getEncryptedLength(int plaintextLength) {
+		return BLOCK_LENGTH + (plaintextLength / BLOCK_LENGTH + 1) * BLOCK_LENGTH;
+	}
+	
+	@Override
+	public int getMaxDecryptedLength(int ciphertextLength) {
+		return Math.max(0, ciphertextLength - BLOCK_LENGTH);
+	}
+	
+	private static void checkResult(CoderResult result) throws CrypterException {
+		if(result.isOverflow())
+			throw new CrypterException("Plaintext overflowed its buffer while transcoding", null);
+		else if(result.isError()) {
+			try {
+				result.throwException();
+			}
+			catch (CharacterCodingException e) {
+				throw new CrypterException("Exception while transcoding plaintext", e);
+			}
+		}
+	}
+	
+	private static void wipe(ByteBuffer buffer) {
+		Arrays.fill(buffer.array(), (byte) 0x00);
+	}
+	
+	private static void wipe(CharBuffer buffer) {
+		Arrays.fill(buffer.array(), '\0');
+	}
+	
+	private static Cipher createCipher() {
+		try {
+			CIPHERS_CREATED.increment();
+			return Cipher.getInstance(TRANSFORMATION);
 		}
+		catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+			// Already known to be available by the time any instance exists
+			throw new IllegalStateException("Unable to retrieve cipher instance", e);
+		}
+	}
+	
+	
+	/**
+	 * Reusable buffers which grow to fit the largest plaintext seen on their
+	 * thread. Outgrown buffers are wiped before being discarded.
+	 *
+	 */
+	private static class Scratch {
+		private ByteBuffer bytes = ByteBuffer.allocate(256);
+		private CharBuffer chars = CharBuffer.allocate(256);
 		
-		return plaintext;
+		ByteBuffer bytes(int capacity) {
+			if(bytes.capacity() < capacity) {
+				wipe(bytes);
+				bytes = ByteBuffer.allocate(capacity);
+			}
+			bytes.clear();
+			return bytes;
+		}
+		
+		CharBuffer chars(int capacity) {
+			if(chars.capacity() < capacity) {
+				wipe(chars);
+				chars = CharBuffer.allocate(capacity);
+			}
+			chars.clear();
+			return chars;
+		}
 	}
 	
 }
@@ -0,0 +1,53 @@
+package ws.temple.graw.crypt;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A Crypter which can work directly on caller-supplied buffers, so that hot
+ * paths needn't allocate intermediate arrays or leave copies of plaintext
+ * behind them.
+ *
+ */
+public interface BufferCrypter extends Crypter {
+	
+	/**
+	 * Encrypts the remaining bytes of the plaintext buffer into the output
+	 * buffer, advancing the position of both.
+	 * 
+	 * @param plaintext
+	 * @param out Must have at least {@link #getEncryptedLength(int)} bytes remaining
+	 * @return The number of bytes written
+	 * @throws CrypterException
+	 */
+	int encrypt(ByteBuffer plaintext, ByteBuffer out) throws CrypterException;
+	
+	/**
+	 * Decrypts the remaining bytes of the ciphertext buffer into the output
+	 * buffer, advancing the position of both.
+	 * 
+	 * @param ciphertext
+	 * @param out Must have at least {@link #getMaxDecryptedLength(int)} bytes remaining
+	 * @return The number of bytes written
+	 * @throws CrypterException
+	 */
+	int decrypt(ByteBuffer ciphertext, ByteBuffer out) throws CrypterException;
+	
+	/**
+	 * Returns the exact length of the ciphertext produced from plaintext of
+	 * the passed length.
+	 * 
+	 * @param plaintextLength
+	 * @return
+	 */
+	int getEncryptedLength(int plaintextLength);
+	
+	/**
+	 * Returns the greatest possible length of the plaintext recovered from
+	 * ciphertext of the passed length.
+	 * 
+	 * @param ciphertextLength
+	 * @return
+	 */
+	int getMaxDecryptedLength(int ciphertextLength);
+	
+}
@@ -1,12 +1,24 @@
 package ws.temple.graw.db;
 
+import java.sql.SQLException;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.List;
+import java.util.Map;
+
 import org.skife.jdbi.v2.Handle;
+import org.skife.jdbi.v2.PreparedBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.api.client.auth.oauth2.StoredCredential;
 
 import ws.temple.graw.db.dao.MetaDAO;
 
 public class DatabaseVersioner {
 	
-	private static final int CURRENT_VERSION = 1;
+	private static final Logger LOG = LoggerFactory.getLogger(DatabaseVersioner.class);
+	
+	private static final int CURRENT_VERSION = 3;
 	private final Handle handle;
 	
 	public DatabaseVersioner(Handle handle) {
@@ -20,12 +32,73 @@ public class DatabaseVersioner {
 		final int dbVersion = dao.getVersion();
 		
 		for(int i = dbVersion; i < CURRENT_VERSION; i++) {
+			// 0001 replaces the serialized credential column, which can only be decoded from Java
+			final List<Map.Entry<String,StoredCredential>> creds = i == 1 ? readSerializedCredentials() : null;
 			handle.createScript(String.format("sql/%04d.sql", i)).execute();
+			if(creds != null)
+				restoreCredentials(creds);
 		}
 
 		dao.setVersion(CURRENT_VERSION);
 
 		handle.commit();
 	}
+	
+	
+	/* * * Credential migration * * */
+	
+	/**
+	 * Reads every credential stored as a serialized object, ahead of the
+	 * column being dropped. Rows which can no longer be deserialized are
+	 * returned with a null credential.
+	 * 
+	 * @return
+	 */
+	private List<Map.Entry<String,StoredCredential>> readSerializedCredentials() {
+		return handle.createQuery("SELECT user_id, stored_cred FROM discord_creds")
+				.map((index, r, ctx) -> {
+					StoredCredential cred;
+					try {
+						cred = (StoredCredential) r.getObject("stored_cred");
+					}
+					catch(SQLException | ClassCastException e) {
+						LOG.debug("Unable to decode stored credential for user {}", r.getString("user_id"), e);
+						cred = null;
+					}
+					return new SimpleEntry<>(r.getString("user_id"), cred);
+				})
+				.list();
+	}
+	
+	
+	/**
+	 * Writes the passed credentials back into the typed columns, logging any
+	 * which were lost in the upgrade.
+	 * 
+	 * @param creds
+	 */
+	private void restoreCredentials(List<Map.Entry<String,StoredCredential>> creds) {
+		final PreparedBatch batch = handle.prepareBatch("INSERT INTO discord_creds (user_id, access_token, refresh_token, expiration_time_ms) "
+				+ "VALUES (:uid, :access, :refresh, :expires)");
+		int dropped = 0;
+		for(Map.Entry<String,StoredCredential> entry : creds) {
+			final StoredCredential cred = entry.getValue();
+			if(cred == null) {
+				dropped++;
+				continue;
+			}
+			batch.add()
+					.bind("uid", entry.getKey())
+					.bind("access", cred.getAccessToken())
+					.bind("refresh", cred.getRefreshToken())
+					.bind("expires", cred.getExpirationTimeMilliseconds());
+		}
+		if(batch.getSize() > 0)
+			batch.execute();
+		
+		LOG.info("Migrated {} stored credentials to typed columns", creds.size() - dropped);
+		if(dropped > 0)
+			LOG.warn("Discarded {} stored credentials that could not be decoded; those users will have to sign in again", dropped);
+	}
 
 }
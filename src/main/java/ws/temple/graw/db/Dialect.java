@@ -0,0 +1,49 @@
+package ws.temple.graw.db;
+
+/**
+ * The database engines whose SQL dialects are supported. Statements which
+ * cannot be written portably are kept in per-dialect resource directories and
+ * resolved by {@link DialectStatementLocator}.
+ *
+ */
+public enum Dialect {
+	HSQLDB("hsqldb"),
+	H2("h2");
+	
+	private final String id;
+	
+	Dialect(String id) {
+		this.id = id;
+	}
+	
+	
+	/**
+	 * Returns the identifier of this dialect, as it appears in JDBC URLs and
+	 * statement resource paths.
+	 * 
+	 * @return
+	 */
+	public String getId() {
+		return id;
+	}
+	
+	
+	/**
+	 * Returns the dialect spoken by the database at the passed JDBC URL.
+	 * 
+	 * @param url
+	 * @return
+	 * @throws IllegalArgumentException If the URL names an unsupported engine
+	 */
+	public static Dialect fromUrl(String url) {
+		final String[] parts = url.split(":", 3);
+		if(parts.length > 1 && parts[0].equalsIgnoreCase("jdbc")) {
+			for(Dialect dialect : values()) {
+				if(dialect.id.equalsIgnoreCase(parts[1]))
+					return dialect;
+			}
+		}
+		throw new IllegalArgumentException("Unsupported database: " + url);
+	}
+	
+}
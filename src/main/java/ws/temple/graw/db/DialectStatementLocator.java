@@ -0,0 +1,56 @@
+package ws.temple.graw.db;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+import org.skife.jdbi.v2.ClasspathStatementLocator;
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.StatementLocator;
+
+/**
+ * Resolves bare statement names against the resource directory of the
+ * configured dialect, such that {@code @SqlUpdate("upsertConfig")} executes
+ * the contents of {@code sql/hsqldb/upsertConfig.sql} on HSQLDB. Anything
+ * else, including literal SQL and script paths, is resolved as usual.
+ *
+ */
+public class DialectStatementLocator implements StatementLocator {
+	
+	private static final Pattern STATEMENT_NAME = Pattern.compile("[A-Za-z]\\w*");
+	
+	private final Dialect dialect;
+	private final StatementLocator fallback = new ClasspathStatementLocator();
+	
+	/** Dialect-specific statements, keyed by name; empty if none exists */
+	private final Map<String,Optional<String>> statements = new ConcurrentHashMap<>();
+	
+	public DialectStatementLocator(Dialect dialect) {
+		this.dialect = dialect;
+	}
+
+	@Override
+	public String locate(String name, StatementContext ctx) throws Exception {
+		if(STATEMENT_NAME.matcher(name).matches()) {
+			final Optional<String> sql = statements.computeIfAbsent(name, this::load);
+			if(sql.isPresent())
+				return sql.get();
+		}
+		return fallback.locate(name, ctx);
+	}
+	
+	private Optional<String> load(String name) {
+		final String path = "sql/" + dialect.getId() + "/" + name + ".sql";
+		try(final InputStream in = getClass().getClassLoader().getResourceAsStream(path)) {
+			return (in != null ? Optional.of(IOUtils.toString(in, "UTF-8")) : Optional.empty());
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to read statement " + path, e);
+		}
+	}
+	
+}
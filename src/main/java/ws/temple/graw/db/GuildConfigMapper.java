@@ -0,0 +1,42 @@
+package ws.temple.graw.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import ws.temple.graw.config.GuildConfig;
+
+/**
+ * Maps a full row of the configs table to an entry associating the guild ID
+ * with its configuration.
+ *
+ */
+public class GuildConfigMapper implements ResultSetMapper<Map.Entry<String,GuildConfig>> {
+
+	@Override
+	public Map.Entry<String,GuildConfig> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+		final GuildConfig config = new GuildConfig();
+		config.setRepoUrl(r.getString("repo_url"));
+		config.setUsername(r.getString("username"));
+		config.setPassword(r.getBytes("password"));
+		
+		final int interval = r.getInt("interval");
+		if(!r.wasNull())
+			config.setQueryInterval(interval);
+		
+		final boolean responsive = r.getBoolean("responsive");
+		if(!r.wasNull())
+			config.setResponsive(responsive);
+		
+		config.setDateFormat(r.getString("date_fmt"));
+		config.setMessageFormat(r.getString("message_fmt"));
+		config.setLogChannel(r.getString("channel_id"));
+		config.setMaintenanceRole(r.getString("maintainers_id"));
+		return new SimpleImmutableEntry<>(r.getString("guild_id"), config);
+	}
+	
+}
@@ -0,0 +1,23 @@
+package ws.temple.graw.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Map;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+/**
+ * Maps a guild ID and last_rev column pair to an entry associating the two.
+ * A null revision is mapped to zero, as with the single-guild query.
+ *
+ */
+public class LatestRevisionMapper implements ResultSetMapper<Map.Entry<String,Long>> {
+
+	@Override
+	public Map.Entry<String,Long> map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+		return new SimpleImmutableEntry<>(r.getString("guild_id"), r.getLong("last_rev"));
+	}
+	
+}
@@ -0,0 +1,22 @@
+package ws.temple.graw.db;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.skife.jdbi.v2.StatementContext;
+import org.skife.jdbi.v2.tweak.ResultSetMapper;
+
+import ws.temple.graw.svn.OutboxEntry;
+
+/**
+ * Maps a row of the notification_outbox table to an OutboxEntry.
+ *
+ */
+public class OutboxEntryMapper implements ResultSetMapper<OutboxEntry> {
+
+	@Override
+	public OutboxEntry map(int index, ResultSet r, StatementContext ctx) throws SQLException {
+		return new OutboxEntry(r.getString("guild_id"), r.getLong("revision"), r.getString("message"));
+	}
+	
+}
@@ -12,24 +12,79 @@ import org.skife.jdbi.v2.Handle;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import ws.temple.graw.metrics.Histogram;
+import ws.temple.graw.metrics.Metrics;
+
 public class QueryRunner<T extends Closeable> {
 	private static final Logger LOG = LoggerFactory.getLogger(QueryRunner.class);
 	
 	private final DBI dbi;
 	private final Class<T> type;
 	
+	/** On-demand jDBI object, which obtains a handle for the duration of each call */
+	private final T onDemand;
+	
+	/** Session bound to the current thread, if any */
+	private final ThreadLocal<Session<T>> session = new ThreadLocal<>();
+	
+	/** Durations of the operations performed through this runner */
+	private final Histogram timer;
+	
 	public QueryRunner(DBI dbi, Class<T> type) {
 		this.dbi = dbi;
 		this.type = type;
+		this.onDemand = dbi.onDemand(type);
+		this.timer = Metrics.histogram("graw_db_call_seconds", "Duration of database operations", "dao", type.getSimpleName());
+	}
+	
+	/**
+	 * Runs the passed task with a single Handle and jDBI object bound to the
+	 * current thread, so that every operation this runner performs on the
+	 * thread in the meantime shares them rather than opening its own. Nested
+	 * invocations share the outermost session.
+	 * 
+	 * @param task
+	 */
+	public void inSession(Runnable task) {
+		final Session<T> current = session.get();
+		if(current != null) {
+			task.run();
+			return;
+		}
+		
+		try(	final Handle handle = dbi.open();
+				final T dao = handle.attach(type);) {
+			session.set(new Session<>(handle, dao));
+			task.run();
+		}
+		catch (IOException e) {
+			LOG.error("Exception while closing handle", e);
+		}
+		finally {
+			session.remove();
+		}
 	}
 
 	/**
 	 * Applies the passed function to a Handle and jDBI object derived from
-	 * the passed DBI instance.
+	 * the passed DBI instance, or those of the current session if one is
+	 * open.
 	 * 
 	 * @param query
 	 */
 	public void execute(BiConsumer<Handle,T> query) {
+		final long start = System.nanoTime();
+		final Session<T> current = session.get();
+		if(current != null) {
+			try {
+				query.accept(current.handle, current.dao);
+			}
+			finally {
+				timer.observeSince(start);
+			}
+			return;
+		}
+		
 		try(	final Handle handle = dbi.open();
 				final T dao = handle.attach(type);) {
 			query.accept(handle, dao);
@@ -37,6 +92,9 @@ public class QueryRunner<T extends Closeable> {
 		catch (IOException e) {
 			LOG.error("Exception while closing handle", e);
 		}
+		finally {
+			timer.observeSince(start);
+		}
 	}
 	
 	/**
@@ -46,31 +104,63 @@ public class QueryRunner<T extends Closeable> {
 	 * @param query
 	 */
 	public void execute(Consumer<T> query) {
-		execute((hand, dao) -> query.accept(dao));
+		final long start = System.nanoTime();
+		try {
+			query.accept(getDao());
+		}
+		finally {
+			timer.observeSince(start);
+		}
 	}
 	
 	/**
 	 * Applies the passed function to a jDBI object derived from the passed DBI
 	 * instance. The function is executed inside of a transaction at the
-	 * environment's default isolation level.
+	 * environment's default isolation level, or inside the current session's
+	 * transaction if it has one. If the function throws, the transaction is
+	 * rolled back.
 	 * 
 	 * @param query
 	 */
 	public void executeTransaction(Consumer<T> query) {
 		execute((hand, dao) -> {
+			if(hand.isInTransaction()) {
+				query.accept(dao);
+				return;
+			}
+			
 			hand.begin();
-			query.accept(dao);
-			hand.commit();
+			try {
+				query.accept(dao);
+				hand.commit();
+			}
+			catch(RuntimeException | Error e) {
+				// Don't leave the transaction open on a handle shared by the session
+				hand.rollback();
+				throw e;
+			}
 		});
 	}
 	
 	/**
 	 * Applies the passed function to a Handle and jDBI object derived from
-	 * the passed DBI instance, and returns the result.
+	 * the passed DBI instance, or those of the current session if one is
+	 * open, and returns the result.
 	 * 
 	 * @param query
 	 */
 	public <V> V query(BiFunction<Handle,T,V> query) {
+		final long start = System.nanoTime();
+		final Session<T> current = session.get();
+		if(current != null) {
+			try {
+				return query.apply(current.handle, current.dao);
+			}
+			finally {
+				timer.observeSince(start);
+			}
+		}
+		
 		try(	final Handle handle = dbi.open();
 				final T dao = handle.attach(type);) {
 			return query.apply(handle, dao);
@@ -78,6 +168,9 @@ public class QueryRunner<T extends Closeable> {
 		catch (IOException e) {
 			LOG.error("Exception while closing handle", e);
 		}
+		finally {
+			timer.observeSince(start);
+		}
 		return null;
 	}
 	
@@ -88,23 +181,68 @@ public class QueryRunner<T extends Closeable> {
 	 * @param query
 	 */
 	public <V> V query(Function<T,V> query) {
-		return query((hand, dao) -> query.apply(dao));
+		final long start = System.nanoTime();
+		try {
+			return query.apply(getDao());
+		}
+		finally {
+			timer.observeSince(start);
+		}
 	}
 	
 	/**
 	 * Applies the passed function to a jDBI object derived from the passed DBI
 	 * instance, and returns the result. The function is executed inside of a
-	 * transaction at the environment's default isolation level.
+	 * transaction at the environment's default isolation level, or inside the
+	 * current session's transaction if it has one. If the function throws,
+	 * the transaction is rolled back.
 	 * 
 	 * @param query
 	 */
 	public <V> V doTransaction(Function<T,V> query) {
 		return query((hand, dao) -> {
+			if(hand.isInTransaction())
+				return query.apply(dao);
+			
 			hand.begin();
-			final V result = query.apply(dao);
-			hand.commit();
-			return result;
+			try {
+				final V result = query.apply(dao);
+				hand.commit();
+				return result;
+			}
+			catch(RuntimeException | Error e) {
+				hand.rollback();
+				throw e;
+			}
 		});
 	}
 	
+	/**
+	 * Returns the current session's jDBI object if one is open, or the cached
+	 * on-demand instance otherwise. The on-demand instance holds a handle only
+	 * for the duration of each call made on it, so it spares non-transactional
+	 * operations from attaching a new object every time.
+	 * 
+	 * @return
+	 */
+	private T getDao() {
+		final Session<T> current = session.get();
+		return (current != null ? current.dao : onDemand);
+	}
+	
+	/**
+	 * A Handle and the jDBI object attached to it, shared by the operations
+	 * performed on a single thread.
+	 * 
+	 */
+	private static class Session<T> {
+		private final Handle handle;
+		private final T dao;
+		
+		Session(Handle handle, T dao) {
+			this.handle = handle;
+			this.dao = dao;
+		}
+	}
+	
 }
@@ -0,0 +1,30 @@
+package ws.temple.graw.db.dao;
+
+import java.io.Closeable;
+import java.util.List;
+
+import org.skife.jdbi.v2.sqlobject.Bind;
+import org.skife.jdbi.v2.sqlobject.BindBean;
+import org.skife.jdbi.v2.sqlobject.SqlBatch;
+import org.skife.jdbi.v2.sqlobject.SqlQuery;
+import org.skife.jdbi.v2.sqlobject.customizers.Mapper;
+
+import ws.temple.graw.db.OutboxEntryMapper;
+import ws.temple.graw.svn.OutboxEntry;
+
+public abstract class OutboxDAO implements Closeable {
+	
+	@SqlBatch("INSERT INTO notification_outbox (guild_id, revision, message) VALUES (:guildId, :revision, :message);")
+	public abstract void append(@BindBean List<OutboxEntry> entries);
+	
+	@SqlBatch("DELETE FROM notification_outbox WHERE guild_id=:guildId AND revision=:revision;")
+	public abstract void remove(@BindBean List<OutboxEntry> entries);
+	
+	@SqlBatch("UPDATE configs SET last_rev=:rev WHERE guild_id=:gid;")
+	public abstract void updateLatestRevisions(@Bind("gid") List<String> guildIds, @Bind("rev") List<Long> revisions);
+	
+	@SqlQuery("SELECT guild_id, revision, message FROM notification_outbox ORDER BY guild_id, revision")
+	@Mapper(OutboxEntryMapper.class)
+	public abstract List<OutboxEntry> getAll();
+	
+}
@@ -0,0 +1,119 @@
+package ws.temple.graw.listeners;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.hooks.ListenerAdapter;
+
+/**
+ * Routes command messages to the listeners registered for them. Messages are
+ * rejected unless they begin with the command prefix, and are then routed by
+ * the command name, so that a listener's pattern is only ever matched against
+ * messages addressed to it.
+ *
+ * Commands must all be registered before the dispatcher is added to JDA.
+ *
+ */
+public class CommandDispatcher extends ListenerAdapter {
+	
+	private static final char PREFIX = '!';
+	
+	/** Registered commands keyed by name, without the prefix */
+	private final Map<String,Command> commands = new HashMap<>();
+	
+	/** Count of prefixed messages naming no registered command */
+	private final LongAdder unknown = new LongAdder();
+	
+	
+	/**
+	 * Registers a listener to handle the specified command.
+	 * 
+	 * @param name The command name, without the prefix
+	 * @param listener
+	 * @return
+	 */
+	public CommandDispatcher register(String name, PatternListener listener) {
+		if(commands.putIfAbsent(name, new Command(listener)) != null)
+			throw new IllegalArgumentException("Command already registered: " + name);
+		return this;
+	}
+	
+	@Override
+	public void onMessageReceived(MessageReceivedEvent event) {
+		final String content = event.getMessage().getContent();
+		if(content.isEmpty() || content.charAt(0) != PREFIX)
+			return;
+		
+		int end = 1;
+		while(end < content.length() && !Character.isWhitespace(content.charAt(end)))
+			end++;
+		
+		final Command command = commands.get(content.substring(1, end));
+		if(command == null) {
+			unknown.increment();
+			return;
+		}
+		
+		final long start = System.nanoTime();
+		if(command.listener.check(content, event))
+			command.matches.increment();
+		command.hits.increment();
+		command.nanos.add(System.nanoTime() - start);
+	}
+	
+	
+	/**
+	 * Returns the statistics of each registered command, keyed by name.
+	 * 
+	 * @return
+	 */
+	public Map<String,Command> getCommands() {
+		return Collections.unmodifiableMap(commands);
+	}
+	
+	
+	/**
+	 * Returns the number of prefixed messages which named no registered
+	 * command.
+	 * 
+	 * @return
+	 */
+	public long getUnknownCount() {
+		return unknown.sum();
+	}
+	
+	
+	/**
+	 * A registered command and its statistics.
+	 *
+	 */
+	public static class Command {
+		private final PatternListener listener;
+		private final LongAdder hits = new LongAdder();
+		private final LongAdder matches = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+		
+		Command(PatternListener listener) {
+			this.listener = listener;
+		}
+		
+		/** Returns the number of messages routed to the command */
+		public long getHits() {
+			return hits.sum();
+		}
+		
+		/** Returns the number of routed messages which matched the command's pattern */
+		public long getMatches() {
+			return matches.sum();
+		}
+		
+		/** Returns the total time spent handling the command, in nanoseconds */
+		public long getTotalNanos() {
+			return nanos.sum();
+		}
+	}
+	
+}
@@ -0,0 +1,204 @@
+package ws.temple.graw.listeners;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Finds occurrences of any number of keywords in a single pass over a piece
+ * of text, using an Aho-Corasick automaton. The cost of a scan depends on the
+ * length of the text and the number of matches, but not on the number of
+ * keywords. Matching is case-sensitive, as with {@link String#contains}.
+ *
+ * Instances are immutable and may be shared between threads.
+ *
+ */
+public final class KeywordMatcher {
+
+	private static final int[] NO_OUTPUTS = new int[0];
+
+	private final String[] keywords;
+
+	/* Automaton, indexed by state; state 0 is the root */
+	private final char[][] labels;
+	private final int[][] targets;
+	private final int[] fail;
+	private final int[][] outputs;
+
+
+	/**
+	 * Compiles the passed keywords. Each keyword is identified by its
+	 * position in iteration order.
+	 *
+	 * @param keywords
+	 */
+	public KeywordMatcher(Collection<String> keywords) {
+		this.keywords = keywords.toArray(new String[keywords.size()]);
+
+		// Build the trie
+		final List<Map<Character,Integer>> edges = new ArrayList<>();
+		final List<List<Integer>> ends = new ArrayList<>();
+		edges.add(new TreeMap<>());
+		ends.add(new ArrayList<>());
+		for(int k = 0; k < this.keywords.length; k++) {
+			final String keyword = this.keywords[k];
+			if(keyword.isEmpty())
+				throw new IllegalArgumentException("Keywords may not be empty");
+
+			int state = 0;
+			for(int i = 0; i < keyword.length(); i++) {
+				final Integer next = edges.get(state).get(keyword.charAt(i));
+				if(next != null) {
+					state = next;
+				}
+				else {
+					edges.add(new TreeMap<>());
+					ends.add(new ArrayList<>());
+					edges.get(state).put(keyword.charAt(i), edges.size() - 1);
+					state = edges.size() - 1;
+				}
+			}
+			ends.get(state).add(k);
+		}
+
+		// Flatten the transitions into sorted arrays
+		final int size = edges.size();
+		labels = new char[size][];
+		targets = new int[size][];
+		for(int s = 0; s < size; s++) {
+			final Map<Character,Integer> out = edges.get(s);
+			labels[s] = new char[out.size()];
+			targets[s] = new int[out.size()];
+			int i = 0;
+			for(Map.Entry<Character,Integer> e : out.entrySet()) {
+				labels[s][i] = e.getKey();
+				targets[s][i] = e.getValue();
+				i++;
+			}
+		}
+
+		// Compute failure links breadth-first, folding in the outputs of each
+		// state's proper suffixes as we go
+		fail = new int[size];
+		outputs = new int[size][];
+		outputs[0] = toArray(ends.get(0));
+		final Queue<Integer> queue = new ArrayDeque<>();
+		for(int child : targets[0]) {
+			fail[child] = 0;
+			queue.add(child);
+		}
+		while(!queue.isEmpty()) {
+			final int state = queue.poll();
+			final List<Integer> out = ends.get(state);
+			for(int k : outputs[fail[state]])
+				out.add(k);
+			outputs[state] = toArray(out);
+
+			for(int i = 0; i < labels[state].length; i++) {
+				final int child = targets[state][i];
+				fail[child] = step(fail[state], labels[state][i]);
+				queue.add(child);
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the set of indices of the keywords which occur in the passed
+	 * text.
+	 *
+	 * @param text
+	 * @return
+	 */
+	public BitSet match(CharSequence text) {
+		final BitSet found = new BitSet(keywords.length);
+		int state = 0;
+		for(int i = 0; i < text.length(); i++) {
+			state = step(state, text.charAt(i));
+			for(int k : outputs[state])
+				found.set(k);
+		}
+		return found;
+	}
+
+
+	/**
+	 * Returns whether any keyword occurs in the passed text.
+	 *
+	 * @param text
+	 * @return
+	 */
+	public boolean matchesAny(CharSequence text) {
+		int state = 0;
+		for(int i = 0; i < text.length(); i++) {
+			state = step(state, text.charAt(i));
+			if(outputs[state].length > 0)
+				return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * Returns the keyword with the specified index.
+	 *
+	 * @param index
+	 * @return
+	 */
+	public String getKeyword(int index) {
+		return keywords[index];
+	}
+
+
+	/**
+	 * Returns the number of keywords.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return keywords.length;
+	}
+
+
+	/**
+	 * Returns the state reached from the passed state on the passed character,
+	 * following failure links where there is no direct transition.
+	 *
+	 * @param state
+	 * @param c
+	 * @return
+	 */
+	private int step(int state, char c) {
+		while(true) {
+			final char[] out = labels[state];
+			int lo = 0, hi = out.length - 1;
+			while(lo <= hi) {
+				final int mid = (lo + hi) >>> 1;
+				if(out[mid] < c)
+					lo = mid + 1;
+				else if(out[mid] > c)
+					hi = mid - 1;
+				else
+					return targets[state][mid];
+			}
+			if(state == 0)
+				return 0;
+			state = fail[state];
+		}
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		if(list.isEmpty())
+			return NO_OUTPUTS;
+		final int[] array = new int[list.size()];
+		for(int i = 0; i < array.length; i++)
+			array[i] = list.get(i);
+		return array;
+	}
+
+}
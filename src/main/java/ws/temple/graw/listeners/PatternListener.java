@@ -38,7 +38,15 @@ public abstract class PatternListener extends ListenerAdapter {
 		check(event.getMessage().getContent(), event);
 	}
 	
-	public void check(String content, MessageReceivedEvent event) {
+	/**
+	 * Matches the passed content against the pattern, and handles the event
+	 * if it matches.
+	 * 
+	 * @param content
+	 * @param event
+	 * @return Whether the content matched
+	 */
+	public boolean check(String content, MessageReceivedEvent event) {
 		final Matcher m = pattern.matcher(content);
 		if(m.find()) {
 			final String[] groups = (m.groupCount() > 0 ? new String[m.groupCount()] : null);
@@ -46,7 +54,9 @@ public abstract class PatternListener extends ListenerAdapter {
 				groups[i - 1] = m.group(i);
 			}
 			onMatch(groups, event);
+			return true;
 		}
+		return false;
 	}
 	
 }
@@ -0,0 +1,180 @@
+package ws.temple.graw.listeners;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import net.dv8tion.jda.entities.Guild;
+import net.dv8tion.jda.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.hooks.ListenerAdapter;
+
+/**
+ * Responds to messages containing any of a set of trigger phrases. All of the
+ * phrases are compiled into a single {@link KeywordMatcher}, so each message
+ * is scanned once regardless of how many triggers are registered.
+ *
+ * Every trigger is enabled everywhere unless a guild has been given its own
+ * set of enabled triggers. Once a trigger fires in a guild (or private
+ * channel), it won't fire there again until its cooldown has passed.
+ *
+ */
+public class TriggerListener extends ListenerAdapter {
+
+	/** Minimum time between firings of a trigger in one place, in milliseconds */
+	private final long cooldown;
+
+	/** Registered triggers and the matcher compiled from them, replaced as a unit */
+	private volatile Triggers triggers = new Triggers(new ArrayList<>(), new ArrayList<>());
+
+	/** Phrases of the triggers enabled for each guild which has its own set */
+	private final Map<String,Set<String>> guildTriggers = new ConcurrentHashMap<>();
+
+	/** Times at which triggers last fired, keyed by place and phrase */
+	private final Map<String,Long> lastFired = new ConcurrentHashMap<>();
+
+	/** Time at which expired entries were last swept from lastFired */
+	private volatile long sweptAt = System.currentTimeMillis();
+
+
+	/**
+	 * Creates a listener with no triggers.
+	 *
+	 * @param cooldown
+	 * @param unit
+	 */
+	public TriggerListener(long cooldown, TimeUnit unit) {
+		this.cooldown = unit.toMillis(cooldown);
+	}
+
+
+	/**
+	 * Registers a response to the specified phrase.
+	 *
+	 * @param phrase
+	 * @param response
+	 * @return
+	 */
+	public synchronized TriggerListener addTrigger(String phrase, Consumer<MessageReceivedEvent> response) {
+		final List<String> phrases = new ArrayList<>(triggers.phrases);
+		final List<Consumer<MessageReceivedEvent>> responses = new ArrayList<>(triggers.responses);
+		if(phrases.contains(phrase))
+			throw new IllegalArgumentException("Trigger already registered: " + phrase);
+
+		phrases.add(phrase);
+		responses.add(response);
+		triggers = new Triggers(phrases, responses);
+		return this;
+	}
+
+
+	/**
+	 * Restricts the specified guild to the triggers with the passed phrases.
+	 *
+	 * @param guildId
+	 * @param phrases
+	 */
+	public void setGuildTriggers(String guildId, Collection<String> phrases) {
+		guildTriggers.put(guildId, new HashSet<>(phrases));
+	}
+
+
+	/**
+	 * Enables all triggers for the specified guild.
+	 *
+	 * @param guildId
+	 */
+	public void clearGuildTriggers(String guildId) {
+		guildTriggers.remove(guildId);
+	}
+
+
+	@Override
+	public void onMessageReceived(MessageReceivedEvent event) {
+		if(event.getAuthor().isBot())
+			return;
+
+		// Most messages match nothing, so check before building the set of matches
+		final Triggers current = triggers;
+		final String content = event.getMessage().getContent();
+		if(!current.matcher.matchesAny(content))
+			return;
+		final BitSet found = current.matcher.match(content);
+
+		final Guild guild = event.getGuild();
+		final String place = (guild != null ? guild.getId() : event.getChannel().getId());
+		final Set<String> enabled = (guild != null ? guildTriggers.get(guild.getId()) : null);
+		for(int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1)) {
+			final String phrase = current.matcher.getKeyword(i);
+			if((enabled == null || enabled.contains(phrase)) && acquire(place + ":" + phrase))
+				current.responses.get(i).accept(event);
+		}
+	}
+
+
+	/**
+	 * Records a firing under the passed key, unless the key's cooldown has yet
+	 * to pass.
+	 *
+	 * @param key
+	 * @return Whether the trigger may fire
+	 */
+	private boolean acquire(String key) {
+		final long now = System.currentTimeMillis();
+		sweep(now);
+		while(true) {
+			final Long last = lastFired.get(key);
+			if(last == null) {
+				if(lastFired.putIfAbsent(key, now) == null)
+					return true;
+			}
+			else if(now - last < cooldown) {
+				return false;
+			}
+			else if(lastFired.replace(key, last, now)) {
+				return true;
+			}
+			// Raced with another firing or a sweep; look again
+		}
+	}
+
+
+	/**
+	 * Removes the firings whose cooldowns have passed, at most once per
+	 * cooldown period. An absent entry allows a trigger to fire just as an
+	 * expired one does.
+	 *
+	 * @param now
+	 */
+	private void sweep(long now) {
+		final long last = sweptAt;
+		if(now - last < cooldown)
+			return;
+		sweptAt = now;
+		lastFired.values().removeIf(t -> now - t >= cooldown);
+	}
+
+
+	/**
+	 * The registered phrases, their responses, and the compiled matcher.
+	 *
+	 */
+	private static class Triggers {
+		private final List<String> phrases;
+		private final List<Consumer<MessageReceivedEvent>> responses;
+		private final KeywordMatcher matcher;
+
+		Triggers(List<String> phrases, List<Consumer<MessageReceivedEvent>> responses) {
+			this.phrases = phrases;
+			this.responses = responses;
+			this.matcher = new KeywordMatcher(phrases);
+		}
+	}
+
+}
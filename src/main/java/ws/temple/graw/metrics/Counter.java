@@ -0,0 +1,38 @@
+package ws.temple.graw.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count.
+ *
+ */
+public final class Counter implements Metric {
+	private final LongAdder count = new LongAdder();
+
+	Counter() {}
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long amount) {
+		count.add(amount);
+	}
+
+	public long get() {
+		return count.sum();
+	}
+
+	@Override
+	public void write(Writer out, String name, String labels) throws IOException {
+		Metrics.writeSample(out, name, labels, count.sum());
+	}
+
+	@Override
+	public String getType() {
+		return "counter";
+	}
+
+}
@@ -0,0 +1,33 @@
+package ws.temple.graw.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A value sampled from its source each time metrics are collected, so that
+ * nothing at all is paid for it in between.
+ *
+ */
+public final class Gauge implements Metric {
+	private final DoubleSupplier source;
+
+	Gauge(DoubleSupplier source) {
+		this.source = source;
+	}
+
+	public double get() {
+		return source.getAsDouble();
+	}
+
+	@Override
+	public void write(Writer out, String name, String labels) throws IOException {
+		Metrics.writeSample(out, name, labels, source.getAsDouble());
+	}
+
+	@Override
+	public String getType() {
+		return "gauge";
+	}
+
+}
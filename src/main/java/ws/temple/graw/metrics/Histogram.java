@@ -0,0 +1,90 @@
+package ws.temple.graw.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A distribution of durations over a fixed set of buckets, reported in
+ * seconds. Observations are taken in nanoseconds, and cost a short scan of
+ * the bucket bounds and two uncontended additions; nothing is allocated.
+ *
+ */
+public final class Histogram implements Metric {
+
+	/** Upper bounds of the buckets, in seconds */
+	private static final double[] BOUNDS = {
+			0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05,
+			0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+	/** Upper bounds of the buckets, in nanoseconds */
+	private static final long[] BOUNDS_NANOS = new long[BOUNDS.length];
+	static {
+		for(int i = 0; i < BOUNDS.length; i++)
+			BOUNDS_NANOS[i] = (long) (BOUNDS[i] * 1e9);
+	}
+
+	/** Observation counts per bucket, with a final overflow bucket; not cumulative */
+	private final LongAdder[] buckets = new LongAdder[BOUNDS.length + 1];
+	private final LongAdder sumNanos = new LongAdder();
+
+	Histogram() {
+		for(int i = 0; i < buckets.length; i++)
+			buckets[i] = new LongAdder();
+	}
+
+
+	/**
+	 * Records a duration.
+	 *
+	 * @param nanos
+	 */
+	public void observe(long nanos) {
+		int i = 0;
+		while(i < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[i])
+			i++;
+		buckets[i].increment();
+		sumNanos.add(nanos);
+	}
+
+
+	/**
+	 * Records the time elapsed since the passed value of
+	 * {@link System#nanoTime()}.
+	 *
+	 * @param startNanos
+	 */
+	public void observeSince(long startNanos) {
+		observe(System.nanoTime() - startNanos);
+	}
+
+
+	/** Returns the number of observations */
+	public long getCount() {
+		long count = 0;
+		for(LongAdder b : buckets)
+			count += b.sum();
+		return count;
+	}
+
+
+	@Override
+	public void write(Writer out, String name, String labels) throws IOException {
+		final String prefix = (labels.isEmpty() ? "" : labels + ",");
+		long cumulative = 0;
+		for(int i = 0; i < BOUNDS.length; i++) {
+			cumulative += buckets[i].sum();
+			Metrics.writeSample(out, name + "_bucket", prefix + "le=\"" + BOUNDS[i] + "\"", cumulative);
+		}
+		cumulative += buckets[BOUNDS.length].sum();
+		Metrics.writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", cumulative);
+		Metrics.writeSample(out, name + "_sum", labels, sumNanos.sum() / 1e9);
+		Metrics.writeSample(out, name + "_count", labels, cumulative);
+	}
+
+	@Override
+	public String getType() {
+		return "histogram";
+	}
+
+}
@@ -0,0 +1,27 @@
+package ws.temple.graw.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A single labelled time series, or group of series in the case of
+ * histograms, which can write its current value in the Prometheus text
+ * format.
+ *
+ */
+interface Metric {
+
+	/**
+	 * Writes the sample lines for this metric.
+	 *
+	 * @param out
+	 * @param name The name of the metric family
+	 * @param labels The metric's labels, without braces; may be empty
+	 * @throws IOException
+	 */
+	void write(Writer out, String name, String labels) throws IOException;
+
+	/** Returns the Prometheus type name of the metric */
+	String getType();
+
+}
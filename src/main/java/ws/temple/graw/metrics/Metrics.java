@@ -0,0 +1,162 @@
+package ws.temple.graw.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide registry of metrics. Metrics are identified by name and an
+ * optional set of label pairs; registering the same counter or histogram
+ * twice returns the existing instance, so callers should look their metrics
+ * up once and keep them in fields rather than on every use.
+ *
+ */
+public final class Metrics {
+
+	/** Families keyed by metric name, kept sorted for stable output */
+	private static final Map<String,Family> FAMILIES = new ConcurrentSkipListMap<>();
+
+	private Metrics() {}
+
+
+	/**
+	 * Returns the counter with the passed name and labels, creating it if
+	 * necessary.
+	 *
+	 * @param name
+	 * @param help
+	 * @param labels Alternating label names and values
+	 * @return
+	 */
+	public static Counter counter(String name, String help, String... labels) {
+		return getOrCreate(name, help, labels, Counter.class, Counter::new);
+	}
+
+
+	/**
+	 * Registers a counter sampling the passed source, for counts which are
+	 * already maintained elsewhere. Replaces any previously registered under
+	 * the same name and labels.
+	 *
+	 * @param name
+	 * @param help
+	 * @param source
+	 * @param labels Alternating label names and values
+	 */
+	public static void counter(String name, String help, DoubleSupplier source, String... labels) {
+		final SampledCounter counter = new SampledCounter(source);
+		getFamily(name, help, counter.getType()).children.put(formatLabels(labels), counter);
+	}
+
+
+	/**
+	 * Returns the histogram with the passed name and labels, creating it if
+	 * necessary.
+	 *
+	 * @param name
+	 * @param help
+	 * @param labels Alternating label names and values
+	 * @return
+	 */
+	public static Histogram histogram(String name, String help, String... labels) {
+		return getOrCreate(name, help, labels, Histogram.class, Histogram::new);
+	}
+
+
+	/**
+	 * Registers a gauge sampling the passed source, replacing any previously
+	 * registered under the same name and labels.
+	 *
+	 * @param name
+	 * @param help
+	 * @param source
+	 * @param labels Alternating label names and values
+	 * @return
+	 */
+	public static Gauge gauge(String name, String help, DoubleSupplier source, String... labels) {
+		final Gauge gauge = new Gauge(source);
+		getFamily(name, help, gauge.getType()).children.put(formatLabels(labels), gauge);
+		return gauge;
+	}
+
+
+	/**
+	 * Writes every registered metric in the Prometheus text exposition
+	 * format.
+	 *
+	 * @param out
+	 * @throws IOException
+	 */
+	public static void write(Writer out) throws IOException {
+		for(Family family : FAMILIES.values()) {
+			out.write("# HELP " + family.name + " " + family.help + "\n");
+			out.write("# TYPE " + family.name + " " + family.type + "\n");
+			for(Map.Entry<String,Metric> e : family.children.entrySet())
+				e.getValue().write(out, family.name, e.getKey());
+		}
+	}
+
+
+	static void writeSample(Writer out, String name, String labels, double value) throws IOException {
+		out.write(name);
+		if(!labels.isEmpty())
+			out.write("{" + labels + "}");
+		out.write(" ");
+		out.write(value == (long) value ? Long.toString((long) value) : Double.toString(value));
+		out.write("\n");
+	}
+
+
+	private static <M extends Metric> M getOrCreate(String name, String help, String[] labels, Class<M> type, Supplier<M> factory) {
+		final M probe = factory.get();
+		final Metric metric = getFamily(name, help, probe.getType()).children
+				.computeIfAbsent(formatLabels(labels), l -> probe);
+		return type.cast(metric);
+	}
+
+
+	private static Family getFamily(String name, String help, String type) {
+		final Family family = FAMILIES.computeIfAbsent(name, n -> new Family(n, help, type));
+		if(!family.type.equals(type))
+			throw new IllegalArgumentException("Metric " + name + " is already registered as a " + family.type);
+		return family;
+	}
+
+
+	private static String formatLabels(String[] labels) {
+		if(labels.length % 2 != 0)
+			throw new IllegalArgumentException("Labels must be given as name-value pairs");
+
+		final StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < labels.length; i += 2) {
+			if(i > 0)
+				sb.append(',');
+			sb.append(labels[i]).append("=\"")
+					.append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+					.append('"');
+		}
+		return sb.toString();
+	}
+
+
+	/**
+	 * The metrics sharing a name, keyed by their formatted labels.
+	 *
+	 */
+	private static class Family {
+		private final String name;
+		private final String help;
+		private final String type;
+		private final Map<String,Metric> children = new ConcurrentSkipListMap<>();
+
+		Family(String name, String help, String type) {
+			this.name = name;
+			this.help = help;
+			this.type = type;
+		}
+	}
+
+}
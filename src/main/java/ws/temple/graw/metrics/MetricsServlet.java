@@ -0,0 +1,54 @@
+package ws.temple.graw.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the contents of the {@link Metrics} registry in the Prometheus text
+ * exposition format. Requests must carry the configured token as a bearer
+ * token in their Authorization header.
+ *
+ */
+public class MetricsServlet extends HttpServlet {
+	private static final long serialVersionUID = 1L;
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	private static final String BEARER = "Bearer ";
+
+	private final byte[] token;
+
+	public MetricsServlet(String token) {
+		this.token = token.getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+		if(!isAuthorized(req)) {
+			resp.setHeader("WWW-Authenticate", "Bearer");
+			resp.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+			return;
+		}
+
+		resp.setStatus(HttpServletResponse.SC_OK);
+		resp.setContentType(CONTENT_TYPE);
+		try(final Writer out = resp.getWriter()) {
+			Metrics.write(out);
+		}
+	}
+
+	private boolean isAuthorized(HttpServletRequest req) {
+		final String header = req.getHeader("Authorization");
+		if(header == null || !header.startsWith(BEARER))
+			return false;
+		// Constant-time comparison, so the token can't be guessed a byte at a time
+		return MessageDigest.isEqual(token, header.substring(BEARER.length()).trim().getBytes(StandardCharsets.UTF_8));
+	}
+
+}
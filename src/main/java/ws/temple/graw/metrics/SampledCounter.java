@@ -0,0 +1,29 @@
+package ws.temple.graw.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A monotonically increasing count maintained elsewhere, sampled each time
+ * metrics are collected.
+ *
+ */
+final class SampledCounter implements Metric {
+	private final DoubleSupplier source;
+
+	SampledCounter(DoubleSupplier source) {
+		this.source = source;
+	}
+
+	@Override
+	public void write(Writer out, String name, String labels) throws IOException {
+		Metrics.writeSample(out, name, labels, source.getAsDouble());
+	}
+
+	@Override
+	public String getType() {
+		return "counter";
+	}
+
+}
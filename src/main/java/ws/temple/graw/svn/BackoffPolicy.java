@@ -0,0 +1,70 @@
+package ws.temple.graw.svn;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Computes retry delays which grow exponentially with the number of
+ * consecutive failures, up to a fixed cap, and are randomly jittered so that
+ * many tasks failing at once don't retry in lockstep.
+ *
+ * Delays are unitless; callers should use the same unit for the base delay
+ * and the cap.
+ *
+ */
+public class BackoffPolicy {
+
+	/** Upper bound on the computed delay */
+	private final long cap;
+
+	/** Fraction of the delay which may be randomly subtracted from it */
+	private final double jitter;
+
+
+	/**
+	 * Creates a new backoff policy.
+	 *
+	 * @param cap The maximum delay to return
+	 * @param jitter The fraction, between 0 and 1, by which a delay may be
+	 *                randomly shortened
+	 */
+	public BackoffPolicy(long cap, double jitter) {
+		if(jitter < 0 || jitter > 1)
+			throw new IllegalArgumentException("Jitter must be between 0 and 1");
+		this.cap = cap;
+		this.jitter = jitter;
+	}
+
+
+	/**
+	 * Returns the delay to wait before the next attempt.
+	 *
+	 * @param base The delay to use when no failures have occurred
+	 * @param failures The number of consecutive failures so far
+	 * @return
+	 */
+	public long getDelay(long base, int failures) {
+		if(failures <= 0)
+			return base;
+
+		// Shift in steps so an absurd failure count can't overflow
+		long delay = base;
+		for(int i = 0; i < failures && delay < cap; i++)
+			delay <<= 1;
+		delay = Math.max(base, Math.min(delay, cap));
+
+		return delay - (long) (delay * jitter * ThreadLocalRandom.current().nextDouble());
+	}
+
+
+	/**
+	 * Returns a random delay in the range [0, interval), for spreading the
+	 * first runs of periodic tasks across their interval.
+	 *
+	 * @param interval
+	 * @return
+	 */
+	public long getInitialDelay(long interval) {
+		return (interval > 0 ? ThreadLocalRandom.current().nextLong(interval) : 0);
+	}
+
+}
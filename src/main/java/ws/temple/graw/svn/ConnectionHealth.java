@@ -0,0 +1,79 @@
+package ws.temple.graw.svn;
+
+import java.util.concurrent.TimeUnit;
+
+import org.tmatesoft.svn.core.SVNAuthenticationException;
+import org.tmatesoft.svn.core.SVNException;
+
+/**
+ * Tracks the health of a repository connection as inferred from the outcome
+ * of the requests actually made against it. The recorded status is trusted
+ * for a fixed period, after which it is considered stale and should be
+ * confirmed by an active probe; an unhealthy status is never trusted, so that
+ * recovery is noticed as soon as possible.
+ *
+ */
+public class ConnectionHealth {
+
+	/** How long a healthy status may be relied upon, in nanoseconds */
+	private final long ttl;
+
+	/** The most recently recorded status, or null if none has been recorded */
+	private volatile SVNStatus status = null;
+
+	/** Time at which the status was last recorded, per System.nanoTime() */
+	private volatile long recordedAt = 0;
+
+
+	public ConnectionHealth(long ttl, TimeUnit unit) {
+		this.ttl = unit.toNanos(ttl);
+	}
+
+
+	/**
+	 * Returns the status corresponding to the passed exception.
+	 *
+	 * @param e
+	 * @return
+	 */
+	public static SVNStatus classify(SVNException e) {
+		return (e instanceof SVNAuthenticationException ? SVNStatus.BAD_CREDENTIALS : SVNStatus.NO_CONNECTION);
+	}
+
+
+	/**
+	 * Records the outcome of a request against the repository.
+	 *
+	 * @param newStatus
+	 * @return The recorded status
+	 */
+	public SVNStatus record(SVNStatus newStatus) {
+		recordedAt = System.nanoTime();
+		status = newStatus;
+		return newStatus;
+	}
+
+
+	/**
+	 * Returns whether the recorded status must be confirmed by an active
+	 * probe; that is, if none has been recorded, if it has expired, or if the
+	 * connection was last found to be unhealthy.
+	 *
+	 * @return
+	 */
+	public boolean isStale() {
+		return status != SVNStatus.NORMAL || System.nanoTime() - recordedAt > ttl;
+	}
+
+
+	/**
+	 * Returns the most recently recorded status, or null if none has been
+	 * recorded.
+	 *
+	 * @return
+	 */
+	public SVNStatus getStatus() {
+		return status;
+	}
+
+}
@@ -1,23 +1,22 @@
 package ws.temple.graw.svn;
 
-import java.util.concurrent.ScheduledExecutorService;
-
-import ws.temple.graw.db.QueryRunner;
-import ws.temple.graw.db.dao.ConfigDAO;
-
 public class DefaultSVNMonitorFactory implements SVNMonitorFactory {
 
-	private final QueryRunner<ConfigDAO> runner;
-	private final ScheduledExecutorService exec;
+	private final RevisionCheckpointStore checkpoints;
+	private final RepositoryPollerRegistry registry;
+	private final NotificationDispatcher notifier;
+	private final NotificationOutbox outbox;
 
-	public DefaultSVNMonitorFactory(QueryRunner<ConfigDAO> runner, ScheduledExecutorService exec) {
-		this.runner = runner;
-		this.exec = exec;
+	public DefaultSVNMonitorFactory(RevisionCheckpointStore checkpoints, RepositoryPollerRegistry registry, NotificationDispatcher notifier, NotificationOutbox outbox) {
+		this.checkpoints = checkpoints;
+		this.registry = registry;
+		this.notifier = notifier;
+		this.outbox = outbox;
 	}
 	
 	@Override
 	public SVNMonitor createMonitor(String id) {
-		return new SVNMonitor(id, runner, exec);
+		return new SVNMonitor(id, checkpoints, registry, notifier, outbox);
 	}
 	
 }
@@ -0,0 +1,477 @@
+package ws.temple.graw.svn;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.dv8tion.jda.entities.TextChannel;
+import ws.temple.graw.metrics.Histogram;
+import ws.temple.graw.metrics.Metrics;
+
+/**
+ * Delivers announcements to Discord channels. Each channel has its own queue,
+ * from which one message is in flight at a time; consecutive announcements
+ * waiting in a queue are packed into as few messages as the length limit
+ * allows. Sends are paced by a per-channel token bucket matching Discord's
+ * rate limit, and failed sends are retried with exponential backoff before
+ * their announcements are given up on. A send Discord never answers is
+ * treated as failed after a timeout, so that it can't stall its channel.
+ * A queue is discarded once it has been idle long enough for its bucket to
+ * refill, so that channels which have gone quiet aren't held onto.
+ *
+ */
+public class NotificationDispatcher {
+	private static final Logger LOG = LoggerFactory.getLogger(NotificationDispatcher.class);
+
+	/** Longest message Discord will accept */
+	public static final int MAX_MESSAGE_LENGTH = 2000;
+
+	private static final String SEPARATOR = "\n";
+	private static final String ELLIPSIS = "...";
+
+	/* Per-channel rate limit: a burst of five, then one per second */
+	private static final int BUCKET_CAPACITY = 5;
+	private static final long BUCKET_REFILL = 1000;
+
+	/** Delay before the first retry of a failed send, in milliseconds */
+	private static final long RETRY_BASE = 1000;
+
+	/** Time to wait for Discord to answer a send before treating it as failed, in milliseconds */
+	private static final long SEND_TIMEOUT = 30000;
+
+	/** Number of failed sends after which a batch is dropped */
+	private static final int MAX_ATTEMPTS = 8;
+
+	private static final Histogram DELIVERY_LATENCY = Metrics.histogram("graw_notify_delivery_seconds", "Time announcements spend queued before Discord accepts them");
+	private static final Histogram SEND_DURATION = Metrics.histogram("graw_notify_send_seconds", "Round-trip time of message sends to Discord");
+
+	/** Executor for paced and retried sends and send timeouts; none of its tasks block, so it mustn't be shared with any that do */
+	private final ScheduledExecutorService exec;
+
+	/** Policy for delaying retries of failed sends */
+	private final BackoffPolicy backoff;
+
+	/** Map associating queues with their respective channel IDs */
+	private final Map<String,ChannelQueue> channels = new ConcurrentHashMap<>();
+
+	/** Map associating delivery statistics with their respective guild IDs */
+	private final Map<String,GuildStats> stats = new ConcurrentHashMap<>();
+
+	private volatile boolean shutdown = false;
+
+
+	public NotificationDispatcher(ScheduledExecutorService exec, BackoffPolicy backoff) {
+		this.exec = exec;
+		this.backoff = backoff;
+	}
+
+
+	/**
+	 * Queues a message for delivery to the passed channel. Messages longer
+	 * than Discord allows are truncated.
+	 *
+	 * @param guildId The guild on whose behalf the message is sent
+	 * @param channel
+	 * @param message
+	 */
+	public void send(String guildId, TextChannel channel, String message) {
+		send(guildId, channel, message, null);
+	}
+
+
+	/**
+	 * Queues a message for delivery to the passed channel, running the passed
+	 * callback once Discord has accepted it. The callback is not run if the
+	 * message is dropped.
+	 *
+	 * @param guildId The guild on whose behalf the message is sent
+	 * @param channel
+	 * @param message
+	 * @param onDelivered
+	 */
+	public void send(String guildId, TextChannel channel, String message, Runnable onDelivered) {
+		if(shutdown) {
+			LOG.warn("Discarding notification for {} after shutdown", guildId);
+			return;
+		}
+
+		final Notification notification = new Notification(guildId, truncate(message), onDelivered);
+		for(;;) {
+			final ChannelQueue queue = channels.computeIfAbsent(channel.getId(), id -> new ChannelQueue(channel));
+			if(queue.add(notification, channel))
+				return;
+			// The queue was retired after being looked up; make way for a new one
+			channels.remove(channel.getId(), queue);
+		}
+	}
+
+
+	/**
+	 * Shortens the passed message to the length Discord allows, if needed.
+	 *
+	 * @param message
+	 * @return
+	 */
+	public static String truncate(String message) {
+		return (message.length() > MAX_MESSAGE_LENGTH
+				? message.substring(0, MAX_MESSAGE_LENGTH - ELLIPSIS.length()) + ELLIPSIS
+				: message);
+	}
+
+
+	/**
+	 * Stops sending. Notifications still queued are discarded.
+	 *
+	 */
+	public void shutdown() {
+		shutdown = true;
+	}
+
+
+	/**
+	 * Returns the delivery statistics for the specified guild, or null if
+	 * nothing has been sent on its behalf.
+	 *
+	 * @param guildId
+	 * @return
+	 */
+	public GuildStats getStats(String guildId) {
+		return stats.get(guildId);
+	}
+
+
+	/**
+	 * Returns the delivery statistics of every guild, keyed by guild ID.
+	 *
+	 * @return
+	 */
+	public Map<String,GuildStats> getAllStats() {
+		return Collections.unmodifiableMap(stats);
+	}
+
+
+	private GuildStats getOrCreateStats(String guildId) {
+		return stats.computeIfAbsent(guildId, id -> new GuildStats());
+	}
+
+
+	/**
+	 * The outstanding notifications for a single channel.
+	 *
+	 */
+	private class ChannelQueue {
+		private final String channelId;
+
+		/** The channel as most recently passed to send */
+		private TextChannel channel;
+
+		private final Deque<Notification> pending = new ArrayDeque<>();
+
+		/** The batch awaiting acknowledgement, or null */
+		private List<Notification> inFlight = null;
+
+		/** Handle to the task failing the in-flight batch if Discord never answers */
+		private Future<?> timeout = null;
+
+		/** Whether a paced or retried send has been scheduled */
+		private boolean drainScheduled = false;
+
+		/** Whether a check for retiring the queue has been scheduled */
+		private boolean retireScheduled = false;
+
+		/** Whether the queue has been removed from the map, after which it accepts nothing */
+		private boolean retired = false;
+
+		/** Consecutive failed sends */
+		private int failures = 0;
+
+		/* Token bucket */
+		private double tokens = BUCKET_CAPACITY;
+		private long refilledAt = System.nanoTime();
+
+		ChannelQueue(TextChannel channel) {
+			this.channelId = channel.getId();
+			this.channel = channel;
+		}
+
+		/**
+		 * Queues the passed notification, unless the queue has been retired.
+		 *
+		 * @param notification
+		 * @param channel
+		 * @return Whether the notification was queued
+		 */
+		synchronized boolean add(Notification notification, TextChannel channel) {
+			if(retired)
+				return false;
+			this.channel = channel;
+			pending.add(notification);
+			getOrCreateStats(notification.guildId).queued.increment();
+			drain();
+			return true;
+		}
+
+		private boolean isIdle() {
+			return inFlight == null && pending.isEmpty() && !drainScheduled;
+		}
+
+		/**
+		 * Sends the next batch, unless one is already in flight or the rate
+		 * limit has been reached.
+		 *
+		 */
+		private void drain() {
+			if(isIdle()) {
+				scheduleRetire();
+				return;
+			}
+			if(inFlight != null || drainScheduled || pending.isEmpty() || shutdown)
+				return;
+
+			final long wait = takeToken();
+			if(wait > 0) {
+				schedule(wait);
+				return;
+			}
+
+			final List<Notification> batch = new ArrayList<>();
+			final StringBuilder text = new StringBuilder();
+			while(!pending.isEmpty()) {
+				final Notification next = pending.peek();
+				if(!batch.isEmpty() && text.length() + SEPARATOR.length() + next.text.length() > MAX_MESSAGE_LENGTH)
+					break;
+				if(!batch.isEmpty())
+					text.append(SEPARATOR);
+				text.append(next.text);
+				batch.add(pending.poll());
+			}
+
+			inFlight = batch;
+			timeout = scheduleTimeout(batch);
+			final long sentAt = System.nanoTime();
+			try {
+				channel.sendMessageAsync(text.toString(), msg -> {
+					SEND_DURATION.observeSince(sentAt);
+					onResult(batch, msg != null);
+				});
+			}
+			catch(RuntimeException e) {
+				LOG.warn("Exception while sending to channel " + channelId, e);
+				onResult(batch, false);
+			}
+		}
+
+		private synchronized void onResult(List<Notification> batch, boolean delivered) {
+			if(inFlight != batch)
+				return;
+			inFlight = null;
+			if(timeout != null) {
+				timeout.cancel(false);
+				timeout = null;
+			}
+
+			if(delivered) {
+				failures = 0;
+				final long now = System.nanoTime();
+				for(Notification n : batch) {
+					final GuildStats s = getOrCreateStats(n.guildId);
+					s.queued.decrement();
+					s.delivered.increment();
+					s.latencyNanos.add(now - n.enqueuedAt);
+					DELIVERY_LATENCY.observe(now - n.enqueuedAt);
+					if(n.onDelivered != null) {
+						try {
+							n.onDelivered.run();
+						}
+						catch(RuntimeException e) {
+							LOG.error("Exception in delivery callback", e);
+						}
+					}
+				}
+				drain();
+				return;
+			}
+
+			failures++;
+			for(Notification n : batch)
+				getOrCreateStats(n.guildId).failures.increment();
+
+			if(failures >= MAX_ATTEMPTS) {
+				LOG.error("Dropping {} notification(s) for channel {} after {} failed attempts", batch.size(), channelId, failures);
+				for(Notification n : batch) {
+					final GuildStats s = getOrCreateStats(n.guildId);
+					s.queued.decrement();
+					s.dropped.increment();
+				}
+				failures = 0;
+				drain();
+				return;
+			}
+
+			// Put the batch back at the head of the queue, in order
+			for(int i = batch.size() - 1; i >= 0; i--)
+				pending.addFirst(batch.get(i));
+			schedule(backoff.getDelay(RETRY_BASE, failures));
+		}
+
+		private synchronized void onTimeout(List<Notification> batch) {
+			if(inFlight == batch) {
+				LOG.warn("No response to send to channel {} after {} ms", channelId, SEND_TIMEOUT);
+				onResult(batch, false);
+			}
+		}
+
+		private Future<?> scheduleTimeout(List<Notification> batch) {
+			try {
+				return exec.schedule(() -> onTimeout(batch), SEND_TIMEOUT, TimeUnit.MILLISECONDS);
+			}
+			catch(RejectedExecutionException e) {
+				return null;
+			}
+		}
+
+		private synchronized void scheduledDrain() {
+			drainScheduled = false;
+			drain();
+		}
+
+		private void schedule(long delay) {
+			try {
+				exec.schedule(this::scheduledDrain, delay, TimeUnit.MILLISECONDS);
+				drainScheduled = true;
+			}
+			catch(RejectedExecutionException e) {
+				LOG.warn("Unable to schedule delivery to channel {}", channelId);
+			}
+		}
+
+		/**
+		 * Schedules the queue to be removed from the map once its bucket has
+		 * refilled, as a new queue would start with a full one.
+		 *
+		 */
+		private void scheduleRetire() {
+			if(retireScheduled || retired)
+				return;
+			refill();
+			try {
+				exec.schedule(this::retireIfIdle, (long) Math.ceil((BUCKET_CAPACITY - tokens) * BUCKET_REFILL), TimeUnit.MILLISECONDS);
+				retireScheduled = true;
+			}
+			catch(RejectedExecutionException e) {
+				// Shutting down; the queue goes with the dispatcher
+			}
+		}
+
+		private void retireIfIdle() {
+			// A send racing with this finds the queue retired and replaces it
+			if(retire())
+				channels.remove(channelId, this);
+		}
+
+		private synchronized boolean retire() {
+			retireScheduled = false;
+			if(!isIdle())
+				return false;
+			refill();
+			if(tokens < BUCKET_CAPACITY) {
+				scheduleRetire();
+				return false;
+			}
+			retired = true;
+			return true;
+		}
+
+		private void refill() {
+			final long now = System.nanoTime();
+			// Fractional milliseconds count too, since refilledAt is reset below
+			final double elapsed = (now - refilledAt) / 1e6;
+			tokens = Math.min(BUCKET_CAPACITY, tokens + elapsed / BUCKET_REFILL);
+			refilledAt = now;
+		}
+
+		/**
+		 * Takes a token from the bucket if one is available.
+		 *
+		 * @return Zero if a token was taken, or otherwise the number of
+		 *          milliseconds until one will be available
+		 */
+		private long takeToken() {
+			refill();
+			if(tokens >= 1) {
+				tokens -= 1;
+				return 0;
+			}
+			return (long) Math.ceil((1 - tokens) * BUCKET_REFILL);
+		}
+	}
+
+
+	/**
+	 * A single queued announcement.
+	 *
+	 */
+	private static class Notification {
+		private final String guildId;
+		private final String text;
+		private final Runnable onDelivered;
+		private final long enqueuedAt = System.nanoTime();
+
+		Notification(String guildId, String text, Runnable onDelivered) {
+			this.guildId = guildId;
+			this.text = text;
+			this.onDelivered = onDelivered;
+		}
+	}
+
+
+	/**
+	 * Delivery statistics for the announcements of a single guild.
+	 *
+	 */
+	public static class GuildStats {
+		private final LongAdder queued = new LongAdder();
+		private final LongAdder delivered = new LongAdder();
+		private final LongAdder failures = new LongAdder();
+		private final LongAdder dropped = new LongAdder();
+		private final LongAdder latencyNanos = new LongAdder();
+
+		/** Returns the number of announcements awaiting delivery */
+		public long getQueueDepth() {
+			return queued.sum();
+		}
+
+		/** Returns the number of announcements delivered */
+		public long getDeliveredCount() {
+			return delivered.sum();
+		}
+
+		/** Returns the number of failed attempts to deliver announcements */
+		public long getFailureCount() {
+			return failures.sum();
+		}
+
+		/** Returns the number of announcements given up on */
+		public long getDroppedCount() {
+			return dropped.sum();
+		}
+
+		/** Returns the total time delivered announcements spent queued, in nanoseconds */
+		public long getTotalLatencyNanos() {
+			return latencyNanos.sum();
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+package ws.temple.graw.svn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.dv8tion.jda.entities.TextChannel;
+import ws.temple.graw.db.QueryRunner;
+import ws.temple.graw.db.dao.OutboxDAO;
+
+/**
+ * Durable queue of revision announcements awaiting delivery. Announcements
+ * are written to the database before they are handed to the
+ * {@link NotificationDispatcher}, and are only removed once Discord has
+ * accepted them, in the same transaction that advances the guild's stored
+ * revision. Announcements still in the outbox at startup are delivered again.
+ *
+ * Crash semantics: an announcement is lost only if it was never written, in
+ * which case its revision was never checkpointed either and is fetched again
+ * on restart. An announcement is repeated only if the process dies between
+ * Discord accepting it and its removal being committed.
+ *
+ * Announcements the dispatcher gives up on are left in the outbox, and are
+ * retried at the next startup.
+ *
+ */
+public class NotificationOutbox {
+	private static final Logger LOG = LoggerFactory.getLogger(NotificationOutbox.class);
+
+	private final QueryRunner<OutboxDAO> runner;
+	private final NotificationDispatcher notifier;
+	private final RevisionCheckpointStore checkpoints;
+
+	/** Executor on which acknowledged announcements are removed */
+	private final Executor exec;
+
+	/** Maximum number of rows written per batch statement */
+	private final int batchSize;
+
+	/** Announcements left over from the last run, keyed by guild ID */
+	private final Map<String,List<OutboxEntry>> preloaded = new ConcurrentHashMap<>();
+
+	/** Latest revision written to the outbox for each guild, by this run or the last */
+	private final Map<String,Long> latest = new ConcurrentHashMap<>();
+
+	/** Announcements delivered but not yet removed */
+	private final Queue<OutboxEntry> acknowledged = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean removalScheduled = new AtomicBoolean(false);
+
+
+	public NotificationOutbox(QueryRunner<OutboxDAO> runner, NotificationDispatcher notifier, RevisionCheckpointStore checkpoints, Executor exec, int batchSize) {
+		this.runner = runner;
+		this.notifier = notifier;
+		this.checkpoints = checkpoints;
+		this.exec = exec;
+		this.batchSize = batchSize;
+	}
+
+
+	/**
+	 * Reads the announcements left over from the last run.
+	 *
+	 */
+	public void preload() {
+		final List<OutboxEntry> entries = runner.query(dao -> dao.getAll());
+		entries.forEach(e -> {
+			preloaded.computeIfAbsent(e.getGuildId(), id -> new ArrayList<>()).add(e);
+			latest.merge(e.getGuildId(), e.getRevision(), Math::max);
+		});
+		if(!entries.isEmpty())
+			LOG.info("Found {} undelivered announcement(s) for {} guild(s)", entries.size(), preloaded.size());
+	}
+
+
+	/**
+	 * Returns the latest revision ever written to the outbox for the
+	 * specified guild, or -1 if there is none. Revisions up to this one have
+	 * been fetched, though they may not have been delivered yet, so a monitor
+	 * restarted while its announcements are in flight must resume after it.
+	 *
+	 * @param guildId
+	 * @return
+	 */
+	public long getLatestRevision(String guildId) {
+		return latest.getOrDefault(guildId, -1L);
+	}
+
+
+	/**
+	 * Delivers the announcements left over from the last run for the
+	 * specified guild. Subsequent calls for the same guild do nothing.
+	 *
+	 * @param guildId
+	 * @param channel
+	 */
+	public void redeliver(String guildId, TextChannel channel) {
+		final List<OutboxEntry> entries = preloaded.remove(guildId);
+		if(entries != null) {
+			LOG.info("Redelivering {} announcement(s) for {}", entries.size(), guildId);
+			entries.forEach(e -> send(channel, e));
+		}
+	}
+
+
+	/**
+	 * Writes the passed announcements to the outbox, then hands them to the
+	 * dispatcher. If the write fails, nothing is sent.
+	 *
+	 * @param channel
+	 * @param entries
+	 */
+	public void publish(TextChannel channel, List<OutboxEntry> entries) {
+		runner.executeTransaction(dao -> {
+			for(int i = 0; i < entries.size(); i += batchSize)
+				dao.append(entries.subList(i, Math.min(i + batchSize, entries.size())));
+		});
+		entries.forEach(e -> latest.merge(e.getGuildId(), e.getRevision(), Math::max));
+		entries.forEach(e -> send(channel, e));
+	}
+
+
+	/**
+	 * Removes any acknowledged announcements immediately.
+	 *
+	 */
+	public void shutdown() {
+		removeAcknowledged();
+	}
+
+
+	private void send(TextChannel channel, OutboxEntry entry) {
+		notifier.send(entry.getGuildId(), channel, entry.getMessage(), () -> acknowledge(entry));
+	}
+
+
+	/**
+	 * Queues a delivered announcement for removal. Announcements delivered in
+	 * quick succession are removed together.
+	 *
+	 * @param entry
+	 */
+	private void acknowledge(OutboxEntry entry) {
+		acknowledged.add(entry);
+		if(removalScheduled.compareAndSet(false, true)) {
+			try {
+				exec.execute(this::removeAcknowledged);
+			}
+			catch(RejectedExecutionException e) {
+				removalScheduled.set(false);
+				LOG.warn("Unable to schedule removal of delivered announcements");
+			}
+		}
+	}
+
+
+	/**
+	 * Removes all acknowledged announcements and advances the stored revision
+	 * of each affected guild, in a single transaction.
+	 *
+	 */
+	private synchronized void removeAcknowledged() {
+		removalScheduled.set(false);
+		final List<OutboxEntry> batch = new ArrayList<>();
+		for(OutboxEntry e; (e = acknowledged.poll()) != null; )
+			batch.add(e);
+		if(batch.isEmpty())
+			return;
+
+		final Map<String,Long> latest = new HashMap<>();
+		batch.forEach(e -> latest.merge(e.getGuildId(), e.getRevision(), Math::max));
+		final List<String> guildIds = new ArrayList<>(latest.keySet());
+		final List<Long> revisions = new ArrayList<>(guildIds.size());
+		for(String id : guildIds)
+			revisions.add(latest.get(id));
+
+		try {
+			runner.executeTransaction(dao -> {
+				for(int i = 0; i < batch.size(); i += batchSize)
+					dao.remove(batch.subList(i, Math.min(i + batchSize, batch.size())));
+				dao.updateLatestRevisions(guildIds, revisions);
+			});
+
+			// Supersede any older revision still waiting to be checkpointed
+			latest.forEach(checkpoints::record);
+			LOG.debug("Removed {} delivered announcement(s)", batch.size());
+		}
+		catch(RuntimeException e) {
+			LOG.error("Exception while removing delivered announcements", e);
+			acknowledged.addAll(batch);
+		}
+	}
+
+}
@@ -0,0 +1,31 @@
+package ws.temple.graw.svn;
+
+/**
+ * A formatted revision announcement held in the notification outbox until
+ * it has been delivered.
+ *
+ */
+public class OutboxEntry {
+	private final String guildId;
+	private final long revision;
+	private final String message;
+
+	public OutboxEntry(String guildId, long revision, String message) {
+		this.guildId = guildId;
+		this.revision = revision;
+		this.message = message;
+	}
+
+	public String getGuildId() {
+		return guildId;
+	}
+
+	public long getRevision() {
+		return revision;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+}
@@ -0,0 +1,295 @@
+package ws.temple.graw.svn;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ws.temple.graw.metrics.Histogram;
+import ws.temple.graw.metrics.Metrics;
+
+/**
+ * Runs repository polls without letting blocking I/O hold up the schedule.
+ * A single scheduler thread does nothing but dispatch ticks when they come
+ * due; the polls themselves run on a separately sized, bounded worker pool.
+ *
+ * No more than a fixed number of polls may run against any one host at a
+ * time. Further ticks for that host wait in a per-host backlog rather than in
+ * the shared worker queue, so a slow or unresponsive host can occupy at most
+ * that many workers and can never delay polls against other hosts.
+ *
+ */
+public class PollingEngine {
+	private static final Logger LOG = LoggerFactory.getLogger(PollingEngine.class);
+
+	/** Delay before retrying a tick rejected by a saturated worker pool */
+	private static final long REJECTION_RETRY_DELAY = 1000;
+
+	private static final Histogram SCHEDULER_LAG = Metrics.histogram("graw_svn_scheduler_lag_seconds", "Delay between a tick coming due and its dispatch");
+	private static final Histogram QUEUE_WAIT = Metrics.histogram("graw_svn_queue_wait_seconds", "Time polls spend waiting for a worker");
+
+	/** Dispatches ticks; never performs blocking work */
+	private final ScheduledThreadPoolExecutor scheduler;
+
+	/** Performs the polls */
+	private final ThreadPoolExecutor workers;
+
+	/** Maximum number of concurrent polls against a single host */
+	private final int hostConcurrency;
+
+	/** Map associating per-host dispatch state with host names; idle hosts are removed */
+	private final Map<String,HostQueue> hosts = new ConcurrentHashMap<>();
+
+	/* Counters */
+	private final LongAdder dispatched = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder queueWaitNanos = new LongAdder();
+
+
+	/**
+	 * Creates a new engine.
+	 *
+	 * @param threads Number of worker threads performing polls
+	 * @param queueCapacity Maximum number of polls awaiting a worker
+	 * @param hostConcurrency Maximum number of concurrent polls against a
+	 *                         single host; must be less than the number of
+	 *                         worker threads
+	 */
+	public PollingEngine(int threads, int queueCapacity, int hostConcurrency) {
+		if(hostConcurrency < 1 || hostConcurrency >= threads)
+			throw new IllegalArgumentException("Per-host concurrency must be positive and less than the worker count");
+
+		this.hostConcurrency = hostConcurrency;
+
+		scheduler = new ScheduledThreadPoolExecutor(1, new NamedThreadFactory("graw-svn-scheduler"));
+		scheduler.setRemoveOnCancelPolicy(true);
+
+		workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueCapacity),
+				new NamedThreadFactory("graw-svn-worker"));
+	}
+
+
+	/**
+	 * Schedules a task to run on the worker pool after the specified delay.
+	 * Cancelling the returned Future prevents the task from being dispatched
+	 * if it hasn't been already; a task which has been dispatched to the
+	 * worker pool will run regardless.
+	 *
+	 * @param host The host the task will contact
+	 * @param task
+	 * @param delay
+	 * @param unit
+	 * @return
+	 */
+	public Future<?> schedule(String host, Runnable task, long delay, TimeUnit unit) {
+		final long due = System.nanoTime() + unit.toNanos(delay);
+		return scheduler.schedule(() -> {
+			SCHEDULER_LAG.observeSince(due);
+			enqueue(host, task);
+		}, delay, unit);
+	}
+
+
+	/**
+	 * Hands a task to the queue for the specified host, creating the queue if
+	 * the host has none. Done atomically with respect to the removal of idle
+	 * queues, so that a host never has more than one.
+	 *
+	 * @param host
+	 * @param task
+	 */
+	private void enqueue(String host, Runnable task) {
+		hosts.compute(host, (h, queue) -> {
+			final HostQueue q = (queue != null ? queue : new HostQueue(h));
+			q.submit(task);
+			return q;
+		});
+	}
+
+
+	/**
+	 * Returns the executor which dispatches ticks, for scheduling other
+	 * periodic work. Tasks submitted to it must not block.
+	 *
+	 * @return
+	 */
+	public ScheduledExecutorService getScheduler() {
+		return scheduler;
+	}
+
+
+	/**
+	 * Stops dispatching ticks and waits briefly for running polls to finish.
+	 *
+	 */
+	public void shutdown() {
+		scheduler.shutdown();
+		workers.shutdown();
+		try {
+			if(!workers.awaitTermination(10, TimeUnit.SECONDS))
+				workers.shutdownNow();
+		}
+		catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+	 * Metrics
+	 * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+	/** Returns the number of polls waiting for a free worker */
+	public int getQueueDepth() {
+		return workers.getQueue().size();
+	}
+
+	/** Returns the number of polls currently running */
+	public int getActiveCount() {
+		return workers.getActiveCount();
+	}
+
+	/** Returns the number of polls held back by per-host concurrency limits */
+	public int getBacklog() {
+		return hosts.values().stream().mapToInt(HostQueue::getBacklog).sum();
+	}
+
+	/** Returns the number of ticks waiting for their scheduled time */
+	public int getScheduledCount() {
+		return scheduler.getQueue().size();
+	}
+
+	/** Returns the total number of polls handed to the worker pool */
+	public long getDispatchedCount() {
+		return dispatched.sum();
+	}
+
+	/** Returns the total number of times the worker pool was saturated */
+	public long getRejectedCount() {
+		return rejected.sum();
+	}
+
+	/** Returns the total time polls have spent waiting for a worker, in nanoseconds */
+	public long getQueueWaitNanos() {
+		return queueWaitNanos.sum();
+	}
+
+
+	/**
+	 * Tracks the polls running against a single host, and holds back those
+	 * which would exceed the per-host limit.
+	 *
+	 */
+	private class HostQueue {
+		private final String host;
+		private final Queue<Runnable> backlog = new ArrayDeque<>();
+		private int running = 0;
+
+		HostQueue(String host) {
+			this.host = host;
+		}
+
+		synchronized void submit(Runnable task) {
+			if(running < hostConcurrency) {
+				running++;
+				dispatch(task);
+			}
+			else {
+				backlog.add(task);
+			}
+		}
+
+		private void dispatch(Runnable task) {
+			final long queuedAt = System.nanoTime();
+			try {
+				workers.execute(() -> {
+					final long wait = System.nanoTime() - queuedAt;
+					queueWaitNanos.add(wait);
+					QUEUE_WAIT.observe(wait);
+					try {
+						task.run();
+					}
+					catch(RuntimeException e) {
+						LOG.error("Unhandled exception while polling " + host, e);
+					}
+					finally {
+						complete();
+					}
+				});
+				dispatched.increment();
+			}
+			catch(RejectedExecutionException e) {
+				running--;
+				rejected.increment();
+				if(!scheduler.isShutdown()) {
+					LOG.warn("Worker pool saturated; deferring poll of {}", host);
+					scheduler.schedule(() -> enqueue(host, task), REJECTION_RETRY_DELAY, TimeUnit.MILLISECONDS);
+				}
+			}
+		}
+
+		/**
+		 * Starts the next task held back for this host, if any, or removes
+		 * this queue once the host has nothing left running.
+		 *
+		 */
+		private void complete() {
+			synchronized(this) {
+				running--;
+				final Runnable next = backlog.poll();
+				if(next != null) {
+					running++;
+					dispatch(next);
+				}
+				if(running > 0)
+					return;
+			}
+			hosts.computeIfPresent(host, (h, queue) -> (queue == this && queue.isIdle() ? null : queue));
+		}
+
+		synchronized boolean isIdle() {
+			return running == 0 && backlog.isEmpty();
+		}
+
+		synchronized int getBacklog() {
+			return backlog.size();
+		}
+	}
+
+
+	/**
+	 * Names the engine's threads for the sake of anyone reading a thread dump.
+	 *
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			final Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package ws.temple.graw.svn;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Identifies a distinct repository connection by its URL and the identity of
+ * the credentials used to access it. Guilds whose configurations produce equal
+ * keys can safely share a single connection and polling task.
+ *
+ */
+public final class RepositoryKey {
+
+	private final String url;
+	private final String host;
+	private final String username;
+
+	/** Digest of the password, so that the plaintext needn't be retained */
+	private final byte[] credentialDigest;
+
+	private RepositoryKey(String url, String username, byte[] credentialDigest) {
+		this.url = url;
+		this.host = parseHost(url);
+		this.username = username;
+		this.credentialDigest = credentialDigest;
+	}
+
+
+	/**
+	 * Creates a key for the specified repository and credentials.
+	 *
+	 * @param url
+	 * @param username
+	 * @param password
+	 * @return
+	 */
+	public static RepositoryKey of(String url, String username, char[] password) {
+		final ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(password));
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(bytes.duplicate());
+			return new RepositoryKey(url, username, digest.digest());
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		finally {
+			if(bytes.hasArray())
+				Arrays.fill(bytes.array(), (byte) 0x00);
+		}
+	}
+
+	/**
+	 * Returns the host name portion of the URL, or the URL itself if it has
+	 * no discernible host.
+	 *
+	 * @param url
+	 * @return
+	 */
+	private static String parseHost(String url) {
+		try {
+			final String host = new URI(url).getHost();
+			return (host != null ? host.toLowerCase() : url);
+		}
+		catch (URISyntaxException e) {
+			return url;
+		}
+	}
+
+	public String getUrl() {
+		return url;
+	}
+
+	public String getHost() {
+		return host;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj)
+			return true;
+		if(!(obj instanceof RepositoryKey))
+			return false;
+		final RepositoryKey other = (RepositoryKey) obj;
+		return url.equals(other.url)
+				&& Objects.equals(username, other.username)
+				&& MessageDigest.isEqual(credentialDigest, other.credentialDigest);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(url, username, Arrays.hashCode(credentialDigest));
+	}
+
+	@Override
+	public String toString() {
+		return "RepositoryKey [url=" + url + ", username=" + username + "]";
+	}
+
+}
@@ -0,0 +1,385 @@
+package ws.temple.graw.svn;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+import ws.temple.graw.metrics.Counter;
+import ws.temple.graw.metrics.Histogram;
+import ws.temple.graw.metrics.Metrics;
+
+/**
+ * Owns the connection to a single repository and polls it on behalf of every
+ * SVNMonitor subscribed to it. The repository is queried once per interval,
+ * at the smallest interval requested by any subscriber, and new revisions are
+ * fanned out to each subscriber for formatting and delivery.
+ *
+ * The connection status is inferred from the outcome of the requests made
+ * while polling and serving commands, and is only actively probed when it is
+ * stale or was last found to be unhealthy.
+ *
+ * All repository I/O is performed while holding the lock on the underlying
+ * SVNRepository, which is not safe for concurrent use. Subscription changes
+ * never wait for that lock; instead, each poll tags its deliveries with the
+ * subscription under which each monitor was polled, and monitors drop those
+ * from polls which began before they last subscribed or unsubscribed.
+ *
+ */
+public class RepositoryPoller {
+	private static final Logger LOG = LoggerFactory.getLogger(RepositoryPoller.class);
+
+	/** Paths to request log entries for; the repository root covers everything */
+	private static final String[] LOG_TARGETS = { "" };
+
+	private static final Histogram POLL_DURATION = Metrics.histogram("graw_svn_poll_seconds", "Duration of repository polls, including fan-out");
+	private static final Counter POLL_FAILURES = Metrics.counter("graw_svn_poll_failures_total", "Number of repository polls which failed");
+
+	private final RepositoryKey key;
+	private final SVNRepository repo;
+	private final PollingEngine engine;
+
+	/** Policy for delaying polls while the repository is unhealthy */
+	private final BackoffPolicy backoff;
+
+	/** Cached status of the repository connection */
+	private final ConnectionHealth health;
+
+	/** Monitors receiving revisions from this poller */
+	private final Set<SVNMonitor> subscribers = new CopyOnWriteArraySet<>();
+
+	/** Number of monitors holding a reference to this poller; guarded by the registry */
+	private int references = 0;
+
+	/** Handle to the next scheduled poll */
+	private Future<?> pollTask = null;
+
+	/** Interval the polling task is currently scheduled at, in seconds */
+	private long pollInterval = -1;
+
+	/** Incremented whenever the polling task is cancelled */
+	private volatile long generation = 0;
+
+	/** Number of consecutive polls which found the repository unhealthy */
+	private int failures = 0;
+
+	/** Whether a poll is in progress, and will shortly refresh the connection status */
+	private volatile boolean polling = false;
+
+
+	RepositoryPoller(RepositoryKey key, SVNRepository repo, PollingEngine engine, BackoffPolicy backoff, long statusTtl) {
+		this.key = key;
+		this.repo = repo;
+		this.engine = engine;
+		this.backoff = backoff;
+		this.health = new ConnectionHealth(statusTtl, TimeUnit.SECONDS);
+	}
+
+
+	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+	 * Subscription Management
+	 * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+	/**
+	 * Adds a monitor to the set of those receiving revisions, rescheduling the
+	 * polling task if the monitor requests a shorter interval.
+	 *
+	 * @param monitor
+	 */
+	public synchronized void subscribe(SVNMonitor monitor) {
+		subscribers.add(monitor);
+		reschedule();
+	}
+
+
+	/**
+	 * Removes a monitor from the set of those receiving revisions. A poll in
+	 * progress may still deliver to the monitor, which is expected to drop
+	 * deliveries made under a subscription it has since ended.
+	 *
+	 * @param monitor
+	 */
+	public synchronized void unsubscribe(SVNMonitor monitor) {
+		if(subscribers.remove(monitor))
+			reschedule();
+	}
+
+
+	/**
+	 * Schedules the polling task at the smallest interval requested by the
+	 * current subscribers, or cancels it if there are none. The first poll is
+	 * scheduled at a random point within the interval, so that the pollers
+	 * started together at launch don't all fire at once.
+	 *
+	 */
+	private void reschedule() {
+		final long interval = subscribers.stream()
+				.mapToLong(SVNMonitor::getPollInterval)
+				.min()
+				.orElse(-1);
+
+		if(interval != pollInterval) {
+			cancel();
+			pollInterval = interval;
+			if(interval > 0) {
+				LOG.debug("Polling {} every {} seconds for {} subscriber(s)", key, interval, subscribers.size());
+				schedule(backoff.getInitialDelay(TimeUnit.SECONDS.toMillis(interval)));
+			}
+		}
+	}
+
+
+	/**
+	 * Schedules a single poll after the specified delay. Each poll schedules
+	 * its successor upon completion, unless the task has since been cancelled.
+	 * Callers must hold the lock on this poller.
+	 *
+	 * @param delay The delay in milliseconds
+	 */
+	private void schedule(long delay) {
+		final long gen = generation;
+		pollTask = engine.schedule(key.getHost(), () -> {
+			poll(gen);
+			synchronized(this) {
+				if(gen == generation)
+					schedule(getNextDelay());
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Returns the delay until the next poll in milliseconds. While the
+	 * repository is unreachable or rejecting credentials, the delay is backed
+	 * off exponentially from the polling interval; it returns to the interval
+	 * once a poll succeeds.
+	 *
+	 * @return
+	 */
+	private long getNextDelay() {
+		final long interval = TimeUnit.SECONDS.toMillis(pollInterval);
+		final SVNStatus status = health.getStatus();
+		if(status == SVNStatus.NO_CONNECTION || status == SVNStatus.BAD_CREDENTIALS) {
+			failures++;
+			final long delay = backoff.getDelay(interval, failures);
+			LOG.debug("Backing off {} for {} ms after {} failure(s)", key, delay, failures);
+			return delay;
+		}
+		else {
+			failures = 0;
+			return interval;
+		}
+	}
+
+
+	/**
+	 * Cancels the polling task. A poll already in progress is left to finish,
+	 * but won't schedule a successor. Callers must hold the lock on this
+	 * poller.
+	 *
+	 */
+	private void cancel() {
+		generation++;
+		failures = 0;
+		if(pollTask != null) {
+			pollTask.cancel(false);
+			pollTask = null;
+		}
+	}
+
+
+	/**
+	 * Halts polling and closes the repository connection. The connection is
+	 * closed on the polling engine, once any poll in progress has finished,
+	 * so that releasing a poller never waits on the repository; this matters
+	 * to config changes, which release pollers from request threads.
+	 *
+	 */
+	void shutdown() {
+		synchronized(this) {
+			subscribers.clear();
+			cancel();
+			pollInterval = -1;
+		}
+		try {
+			engine.schedule(key.getHost(), this::closeSession, 0, TimeUnit.MILLISECONDS);
+		}
+		catch(RejectedExecutionException e) {
+			// The engine is shutting down, so there's no one to wait behind
+			closeSession();
+		}
+	}
+
+
+	private void closeSession() {
+		synchronized(repo) {
+			repo.closeSession();
+		}
+	}
+
+
+	int retain() {
+		return ++references;
+	}
+
+
+	int release() {
+		return --references;
+	}
+
+
+	public RepositoryKey getKey() {
+		return key;
+	}
+
+
+	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+	 * Repository Querying
+	 * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+
+	/**
+	 * Returns the number of the most recent revision in the repository.
+	 *
+	 * @return
+	 * @throws SVNException
+	 */
+	public long getLatestRevision() throws SVNException {
+		synchronized(repo) {
+			try {
+				final long latestRevision = repo.getLatestRevision();
+				updateStatus(SVNStatus.NORMAL);
+				return latestRevision;
+			}
+			catch(SVNException e) {
+				updateStatus(ConnectionHealth.classify(e));
+				throw e;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the properties of the specified revision.
+	 *
+	 * @param revId
+	 * @return
+	 * @throws SVNException
+	 */
+	public SVNProperties getRevisionProperties(long revId) throws SVNException {
+		synchronized(repo) {
+			try {
+				final SVNProperties props = repo.getRevisionProperties(revId, null);
+				updateStatus(SVNStatus.NORMAL);
+				return props;
+			}
+			catch(SVNException e) {
+				updateStatus(ConnectionHealth.classify(e));
+				throw e;
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the status of the repository connection. The cached status is
+	 * returned if it is still fresh, or if a poll in progress is about to
+	 * refresh it; otherwise the connection is tested, and subscribers are
+	 * notified of the result.
+	 *
+	 * @return
+	 */
+	public SVNStatus getStatus() {
+		final SVNStatus cached = health.getStatus();
+		if(!health.isStale() || (polling && cached != null))
+			return cached;
+
+		synchronized(repo) {
+			try {
+				repo.testConnection();
+				return updateStatus(SVNStatus.NORMAL);
+			}
+			catch (SVNException e) {
+				return updateStatus(ConnectionHealth.classify(e));
+			}
+		}
+	}
+
+
+	/**
+	 * Records the outcome of a request against the repository and notifies
+	 * subscribers of the resulting status.
+	 *
+	 * @param status
+	 * @return
+	 */
+	private SVNStatus updateStatus(SVNStatus status) {
+		health.record(status);
+		for(SVNMonitor mon : subscribers)
+			mon.announceStatusChange(status);
+		return status;
+	}
+
+
+	/**
+	 * Query for new revisions and fan them out to subscribers. Revisions are
+	 * fetched once, starting from the oldest revision known to any of the
+	 * subscribers, in a single log request whose entries are handed to the
+	 * subscribers as they arrive. Each delivery carries the subscription
+	 * under which the monitor was polled. The outcome of the poll determines
+	 * the recorded connection status.
+	 *
+	 * @param gen The generation of the task performing the poll; the poll is
+	 *             skipped if the task has since been cancelled
+	 */
+	private void poll(long gen) {
+		synchronized(repo) {
+			if(gen != generation)
+				return;
+
+			final long start = System.nanoTime();
+			polling = true;
+			try {
+				final long latestRevision = repo.getLatestRevision();
+				updateStatus(SVNStatus.NORMAL);
+
+				// Take each subscription before the revision it starts from
+				final Map<SVNMonitor,Long> targets = new HashMap<>();
+				for(SVNMonitor mon : subscribers)
+					targets.put(mon, mon.getSubscription());
+
+				final long oldest = targets.keySet().stream()
+						.mapToLong(SVNMonitor::getLastRevision)
+						.filter(rev -> rev > 0)
+						.min()
+						.orElse(latestRevision);
+
+				if(oldest < latestRevision) {
+					repo.log(LOG_TARGETS, oldest + 1, latestRevision, false, false, entry -> {
+						targets.forEach((mon, sub) -> mon.onRevision(entry, sub));
+					});
+				}
+
+				targets.forEach((mon, sub) -> mon.onPollComplete(latestRevision, sub));
+			}
+			catch(SVNException e) {
+				POLL_FAILURES.increment();
+				updateStatus(ConnectionHealth.classify(e));
+				LOG.debug("Exception while querying revisions", e);
+			}
+			finally {
+				polling = false;
+				POLL_DURATION.observeSince(start);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package ws.temple.graw.svn;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+/**
+ * Hands out shared RepositoryPoller instances, such that all monitors
+ * configured with the same repository and credentials are served by a single
+ * connection and polling task.
+ *
+ */
+public class RepositoryPollerRegistry {
+	private static final Logger LOG = LoggerFactory.getLogger(RepositoryPollerRegistry.class);
+
+	/** Map associating live pollers with their respective repository keys */
+	private final Map<RepositoryKey,RepositoryPoller> pollers = new HashMap<>();
+
+	/** Engine on which the polling tasks are run */
+	private final PollingEngine engine;
+
+	/** Policy for delaying polls of unhealthy repositories */
+	private final BackoffPolicy backoff;
+
+	/** How long a healthy connection status may be cached, in seconds */
+	private final long statusTtl;
+
+
+	public RepositoryPollerRegistry(PollingEngine engine, BackoffPolicy backoff, long statusTtl) {
+		this.engine = engine;
+		this.backoff = backoff;
+		this.statusTtl = statusTtl;
+	}
+
+
+	/**
+	 * Returns the poller for the specified key, creating one backed by the
+	 * passed repository if none exists. If an existing poller is returned,
+	 * the passed repository is closed and discarded. Each call must be
+	 * balanced by a call to {@link #release(RepositoryPoller)}.
+	 *
+	 * @param key
+	 * @param repo
+	 * @return
+	 */
+	public synchronized RepositoryPoller acquire(RepositoryKey key, SVNRepository repo) {
+		RepositoryPoller poller = pollers.get(key);
+		if(poller == null) {
+			poller = new RepositoryPoller(key, repo, engine, backoff, statusTtl);
+			pollers.put(key, poller);
+			LOG.debug("Created poller for {}", key);
+		}
+		else {
+			repo.closeSession();
+		}
+
+		poller.retain();
+		return poller;
+	}
+
+
+	/**
+	 * Releases a reference to the passed poller, shutting it down once it is
+	 * no longer referenced.
+	 *
+	 * @param poller
+	 */
+	public synchronized void release(RepositoryPoller poller) {
+		if(poller.release() <= 0) {
+			pollers.remove(poller.getKey());
+			poller.shutdown();
+			LOG.debug("Removed poller for {}", poller.getKey());
+		}
+	}
+
+
+	/**
+	 * Returns the number of distinct repositories currently being served.
+	 *
+	 * @return
+	 */
+	public synchronized int size() {
+		return pollers.size();
+	}
+
+}
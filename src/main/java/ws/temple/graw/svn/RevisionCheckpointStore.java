@@ -0,0 +1,144 @@
+package ws.temple.graw.svn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ws.temple.graw.db.QueryRunner;
+import ws.temple.graw.db.dao.ConfigDAO;
+
+/**
+ * Write-behind store for the latest revision each guild has been notified of.
+ * Recorded revisions are held in memory, coalesced per guild, and written to
+ * the database in a single batch on a timer and at shutdown.
+ *
+ * Crash semantics: revisions recorded since the last flush are lost if the
+ * process dies, so on restart the affected guilds resume from an older
+ * revision and fetch those revisions again. Revisions that were announced are
+ * checkpointed directly by the {@link NotificationOutbox} as they are
+ * delivered, so only polls with nothing to announce are affected. Delivery is
+ * at least once: an announcement is repeated if the process dies after
+ * Discord accepts it but before its removal from the outbox is committed.
+ *
+ */
+public class RevisionCheckpointStore {
+	private static final Logger LOG = LoggerFactory.getLogger(RevisionCheckpointStore.class);
+
+	/** QueryRunner for persisting known revision numbers */
+	private final QueryRunner<ConfigDAO> runner;
+
+	/** Revisions which have been recorded but not yet written */
+	private final Map<String,Long> pending = new ConcurrentHashMap<>();
+
+	/** Revisions read in bulk at startup, each consumed by the first lookup for its guild */
+	private final Map<String,Long> preloaded = new ConcurrentHashMap<>();
+
+	/** Handle to the periodic flush task */
+	private Future<?> flushTask = null;
+
+
+	public RevisionCheckpointStore(QueryRunner<ConfigDAO> runner) {
+		this.runner = runner;
+	}
+
+
+	/**
+	 * Begins flushing recorded revisions periodically.
+	 *
+	 * @param exec
+	 * @param interval The flush interval in seconds
+	 */
+	public synchronized void start(ScheduledExecutorService exec, long interval) {
+		if(flushTask == null)
+			flushTask = exec.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.SECONDS);
+	}
+
+
+	/**
+	 * Reads the stored revisions of all guilds in a single query, so that
+	 * monitors started in bulk needn't each query for their own.
+	 *
+	 */
+	public void preload() {
+		runner.query(dao -> dao.getAllLatestRevisions())
+				.forEach(e -> preloaded.put(e.getKey(), e.getValue()));
+		LOG.debug("Preloaded revisions for {} guild(s)", preloaded.size());
+	}
+
+
+	/**
+	 * Stops the periodic flush and writes any outstanding revisions.
+	 *
+	 */
+	public synchronized void shutdown() {
+		if(flushTask != null) {
+			flushTask.cancel(false);
+			flushTask = null;
+		}
+		flush();
+	}
+
+
+	/**
+	 * Returns the latest revision recorded for the specified guild, whether
+	 * or not it has been written yet.
+	 *
+	 * @param guildId
+	 * @return
+	 */
+	public long getLatestRevision(String guildId) {
+		final Long rev = pending.get(guildId);
+		if(rev != null)
+			return rev;
+
+		final Long stored = preloaded.remove(guildId);
+		return (stored != null ? stored : runner.query(dao -> dao.getLatestRevision(guildId)));
+	}
+
+
+	/**
+	 * Records the latest revision for the specified guild, superseding any
+	 * unwritten revision previously recorded for it.
+	 *
+	 * @param guildId
+	 * @param revision
+	 */
+	public void record(String guildId, long revision) {
+		pending.put(guildId, revision);
+	}
+
+
+	/**
+	 * Writes all outstanding revisions in a single batch. Revisions recorded
+	 * while the write is in progress are left for the next flush.
+	 *
+	 */
+	public synchronized void flush() {
+		if(pending.isEmpty())
+			return;
+
+		final Map<String,Long> batch = new HashMap<>(pending);
+		final List<String> guildIds = new ArrayList<>(batch.keySet());
+		final List<Long> revisions = new ArrayList<>(guildIds.size());
+		for(String id : guildIds)
+			revisions.add(batch.get(id));
+
+		try {
+			runner.executeTransaction(dao -> dao.updateLatestRevisions(guildIds, revisions));
+			batch.forEach(pending::remove);
+			LOG.debug("Checkpointed revisions for {} guild(s)", batch.size());
+		}
+		catch(RuntimeException e) {
+			LOG.error("Exception while checkpointing revisions", e);
+		}
+	}
+
+}
@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.wc.SVNWCUtil;
 
@@ -33,11 +34,15 @@ public class SVNManager implements GuildConfigListener, GuildStatusListener {
 	
 	private final SVNMonitorFactory factory;
 	
+	/** Write-behind store for the monitors' known revisions */
+	private final RevisionCheckpointStore checkpoints;
 	
-	public SVNManager(JDA jda, Crypter crypt, SVNMonitorFactory factory) {
+	
+	public SVNManager(JDA jda, Crypter crypt, SVNMonitorFactory factory, RevisionCheckpointStore checkpoints) {
 		this.jda = jda;
 		this.crypt = crypt;
 		this.factory = factory;
+		this.checkpoints = checkpoints;
 	}
 
 	
@@ -56,12 +61,13 @@ public class SVNManager implements GuildConfigListener, GuildStatusListener {
 	public void applyConfig(SVNMonitor monitor, GuildConfig config) {
 		try {
 			monitor.stopMonitor();
-			monitor.setRepository(SVNRepositoryFactory.create(SVNURL.parseURIEncoded(config.getRepoUrl())));
 			monitor.setLogChannel(jda.getTextChannelById(config.getLogChannel()));
 			monitor.setPollInterval(config.getQueryInterval());
 			
 			final char[] password = crypt.decrypt(config.getPassword(), "UTF-8");
-			monitor.setAuthManager(SVNWCUtil.createDefaultAuthenticationManager(config.getUsername(), password));
+			final SVNRepository repo = SVNRepositoryFactory.create(SVNURL.parseURIEncoded(config.getRepoUrl()));
+			repo.setAuthenticationManager(SVNWCUtil.createDefaultAuthenticationManager(config.getUsername(), password));
+			monitor.setRepository(RepositoryKey.of(config.getRepoUrl(), config.getUsername(), password), repo);
 			
 			final SVNRevisionFormatter formatter = new SVNRevisionFormatter(config.getDateFormat(), config.getMessageFormat());
 			monitor.setFormatter(formatter);
@@ -73,8 +79,11 @@ public class SVNManager implements GuildConfigListener, GuildStatusListener {
 	
 	
 	public void shutdown() {
-		for(SVNMonitor mon : monitors.values())
+		for(SVNMonitor mon : monitors.values()) {
 			mon.stopMonitor();
+			mon.releaseRepository();
+		}
+		checkpoints.shutdown();
 	}
 
 
@@ -91,7 +100,9 @@ public class SVNManager implements GuildConfigListener, GuildStatusListener {
 
 	@Override
 	public void onGuildDeactivated(String id) {
-		monitors.remove(id).stopMonitor();
+		final SVNMonitor monitor = monitors.remove(id);
+		monitor.stopMonitor();
+		monitor.releaseRepository();
 	}
 
 
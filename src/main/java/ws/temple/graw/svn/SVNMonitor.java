@@ -3,22 +3,15 @@ package ws.temple.graw.svn;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.tmatesoft.svn.core.SVNAuthenticationException;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
 import org.tmatesoft.svn.core.SVNProperties;
-import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
 import org.tmatesoft.svn.core.io.SVNRepository;
 
 import net.dv8tion.jda.entities.TextChannel;
-import ws.temple.graw.Utils;
-import ws.temple.graw.db.QueryRunner;
-import ws.temple.graw.db.dao.ConfigDAO;
 
 public class SVNMonitor {
 	private static final Logger LOG = LoggerFactory.getLogger(SVNMonitor.class);
@@ -36,33 +29,52 @@ public class SVNMonitor {
 	/** ID for the server to which this monitor reports */
 	private final String guildId;
 	
-	/** Executor reference for scheduling the polling task */
-	private final ScheduledExecutorService exec;
+	/** Registry from which shared repository pollers are obtained */
+	private final RepositoryPollerRegistry registry;
 	
-	/** QueryRunner for persisting known revision number */
-	private final QueryRunner<ConfigDAO> runner;
+	/** Store for persisting known revision number */
+	private final RevisionCheckpointStore checkpoints;
+	
+	/** Pipeline through which status alerts are delivered */
+	private final NotificationDispatcher notifier;
+	
+	/** Durable queue through which revision announcements are delivered */
+	private final NotificationOutbox outbox;
 
-	/** Handle to repository polling task */
-	private Future<?> pollTask = null;
+	/** Shared poller for the configured repository */
+	private RepositoryPoller poller = null;
+	
+	/** Whether this monitor is currently receiving revisions from the poller */
+	private volatile boolean subscribed = false;
+	
+	/** Changed whenever this monitor subscribes or unsubscribes; guarded by this */
+	private volatile long subscription = 0;
 
 	/* Self-explanatory configuration parameters */
-	private SVNRepository repo;
-	private SVNRevisionFormatter formatter;
+	private volatile SVNRevisionFormatter formatter;
 	private TextChannel channel;
 	private long pollInterval;
 	
-	/** Tracks this monitor's operational status */
-	private SVNStatus state = SVNStatus.NOT_CONFIGURED;
+	/** Tracks this monitor's operational status; written while holding the lock on this */
+	private volatile SVNStatus state = SVNStatus.NOT_CONFIGURED;
 	
 	/** Tracks the most recent revision this monitor is aware of */
-	private long lastRev = -1;
+	private volatile long lastRev = -1;
+	
+	/** The most recent revision either checkpointed or written to the outbox; guarded by this */
+	private long recordedRev = -1;
+	
+	/** Announcements received during the current poll, written when it completes; guarded by this */
+	private final List<OutboxEntry> unpublished = new ArrayList<>();
 	
 
 	
-	public SVNMonitor(String id, QueryRunner<ConfigDAO> runner, ScheduledExecutorService exec) {
+	public SVNMonitor(String id, RevisionCheckpointStore checkpoints, RepositoryPollerRegistry registry, NotificationDispatcher notifier, NotificationOutbox outbox) {
 		this.guildId = id;
-		this.runner = runner;
-		this.exec = exec;
+		this.checkpoints = checkpoints;
+		this.registry = registry;
+		this.notifier = notifier;
+		this.outbox = outbox;
 	}
 	
 	
@@ -74,23 +86,45 @@ public class SVNMonitor {
 	 * Initiate the repository monitoring task.
 	 * 
 	 */
-	public void startMonitor() {
+	public synchronized void startMonitor() {
 		announceStatusChange(SVNStatus.NORMAL);
-		if(pollTask == null && channel != null) {
-			lastRev = runner.query(dao -> dao.getLatestRevision(guildId));
-			pollTask = exec.scheduleWithFixedDelay(this::pollRepository, 0, pollInterval, TimeUnit.SECONDS);
+		if(!subscribed && poller != null && channel != null) {
+			// Revisions in the outbox were fetched, even if some are still in flight
+			lastRev = Math.max(checkpoints.getLatestRevision(guildId), outbox.getLatestRevision(guildId));
+			recordedRev = lastRev;
+			unpublished.clear();
+			subscription++;
+			subscribed = true;
+			outbox.redeliver(guildId, channel);
+			poller.subscribe(this);
+		}
+	}
+	
+	
+	/**
+	 * Halt the repository monitoring task. Once this method returns, no
+	 * further revisions will be dispatched by this monitor; revisions still
+	 * being delivered by a poll in progress are dropped.
+	 * 
+	 */
+	public synchronized void stopMonitor() {
+		if(subscribed) {
+			subscribed = false;
+			subscription++;
+			poller.unsubscribe(this);
 		}
 	}
 	
 	
 	/**
-	 * Halt the repository monitoring task.
+	 * Release this monitor's reference to the shared repository poller. The
+	 * monitor must be stopped first.
 	 * 
 	 */
-	public void stopMonitor() {
-		if(pollTask != null) {
-			Utils.blockCancel(pollTask);
-			pollTask = null;
+	public void releaseRepository() {
+		if(poller != null) {
+			registry.release(poller);
+			poller = null;
 		}
 	}
 	
@@ -104,13 +138,11 @@ public class SVNMonitor {
 	 * this monitor's SVNRevisionFormatter.
 	 * 
 	 * @param revId
+	 * @param props
 	 * @return
 	 * @throws SVNException
-	 * @throws IOException
 	 */
-	private String getFormattedRevision(long revId) throws SVNException {
-		final SVNProperties props = repo.getRevisionProperties(revId, null);
-		
+	private String getFormattedRevision(long revId, SVNProperties props) throws SVNException {
 		try {
 			return formatter.format(revId, props);
 		}
@@ -122,21 +154,20 @@ public class SVNMonitor {
 	
 	
 	/**
-	 * Returns the specified range of revisions, formatted according to this
-	 * monitor's SVNRevisionFormatter.
+	 * Returns the passed log entry, formatted according to this monitor's
+	 * SVNRevisionFormatter.
 	 * 
-	 * @param start
-	 * @param end
+	 * @param entry
 	 * @return
-	 * @throws SVNException
-	 * @throws IOException
 	 */
-	private List<String> getFormattedRevisions(long start, long end) throws SVNException {
-		final List<String> revs = new ArrayList<>((int) (end - start));
-		for(long i = start; i <= end; i++) {
-			revs.add(getFormattedRevision(i));
+	private String getFormattedRevision(SVNLogEntry entry) {
+		try {
+			return formatter.format(entry);
 		}
-		return revs;
+		catch (IOException e) {
+			LOG.error("Exception while formatting revision", e);
+		}
+		return null;
 	}
 	
 	
@@ -151,8 +182,8 @@ public class SVNMonitor {
 	public String getRevision(long id) {
 		if(getStatus() == SVNStatus.NORMAL) {
 			try {
-				if(id > 0 && id <= repo.getLatestRevision())
-					return getFormattedRevision(id);
+				if(id > 0 && id <= poller.getLatestRevision())
+					return getFormattedRevision(id, poller.getRevisionProperties(id));
 			}
 			catch (SVNException e) {
 				LOG.error("Exception while querying for revision", e);
@@ -169,8 +200,11 @@ public class SVNMonitor {
 	 * @return
 	 */
 	public String getLatestRevision() {
+		if(poller == null)
+			return null;
+		
 		try {
-			return getRevision(repo.getLatestRevision());
+			return getRevision(poller.getLatestRevision());
 		}
 		catch (SVNException e) {
 			LOG.error("Exception while querying for revision", e);
@@ -180,25 +214,53 @@ public class SVNMonitor {
 	
 	
 	/**
-	 * Query for new revisions and dispatch notifications.
+	 * Queue a notification for the passed revision if it is newer than the
+	 * most recent one this monitor is aware of. Invoked by the shared poller
+	 * for each log entry as it is received; entries from a poll begun under
+	 * an earlier subscription are dropped.
 	 * 
+	 * @param entry
+	 * @param sub The subscription under which the poll began
 	 */
-	private void pollRepository() {
-		if(getStatus() == SVNStatus.NORMAL) {
-			try {
-				final long latestRevision = repo.getLatestRevision();
-				
-				if(lastRev > 0 && lastRev < latestRevision) {
-					for(String rev : getFormattedRevisions(lastRev + 1, latestRevision))
-						channel.sendMessageAsync(rev, null);
+	synchronized void onRevision(SVNLogEntry entry, long sub) {
+		if(sub == subscription && subscribed && lastRev > 0 && entry.getRevision() > lastRev) {
+			final String message = getFormattedRevision(entry);
+			if(message != null)
+				unpublished.add(new OutboxEntry(guildId, entry.getRevision(), NotificationDispatcher.truncate(message)));
+			lastRev = entry.getRevision();
+		}
+	}
+	
+	
+	/**
+	 * Publish the notifications queued during a poll once it has finished
+	 * delivering revisions. Their revisions are checkpointed as they are
+	 * delivered; any later revision which produced no notification is
+	 * checkpointed directly. If the notifications can't be written, they are
+	 * kept for the next poll and nothing is checkpointed.
+	 * 
+	 * @param latestRevision
+	 * @param sub The subscription under which the poll began
+	 */
+	synchronized void onPollComplete(long latestRevision, long sub) {
+		if(sub == subscription && subscribed) {
+			if(!unpublished.isEmpty()) {
+				try {
+					outbox.publish(channel, unpublished);
+					for(OutboxEntry e : unpublished)
+						recordedRev = Math.max(recordedRev, e.getRevision());
+					unpublished.clear();
+				}
+				catch(RuntimeException e) {
+					LOG.error("Exception while writing notifications to outbox", e);
 				}
-				
-				lastRev = latestRevision;
-				runner.executeTransaction(dao -> dao.updateLatestRevision(guildId, lastRev));
 			}
-			catch(SVNException e) {
-				LOG.error("Exception while querying revisions", e);
+			// Covers revisions skipped by the formatter, which never reach the outbox
+			if(unpublished.isEmpty() && latestRevision > recordedRev) {
+				checkpoints.record(guildId, latestRevision);
+				recordedRev = latestRevision;
 			}
+			lastRev = latestRevision;
 		}
 	}
 	
@@ -210,16 +272,16 @@ public class SVNMonitor {
 	 * @param newState
 	 * @return The new state
 	 */
-	private SVNStatus announceStatusChange(SVNStatus newState) {
-		if(state != newState) {
+	synchronized SVNStatus announceStatusChange(SVNStatus newState) {
+		if(state != newState && channel != null) {
 			if(newState == SVNStatus.NORMAL && state != SVNStatus.NOT_CONFIGURED)
-				channel.sendMessageAsync(ALERT_CONNECTION_RESUMED, null);
+				notifier.send(guildId, channel, ALERT_CONNECTION_RESUMED);
 			
 			else if(newState == SVNStatus.NO_CONNECTION)
-				channel.sendMessageAsync(ALERT_CONNECTION_LOST, null);
+				notifier.send(guildId, channel, ALERT_CONNECTION_LOST);
 			
 			else if(newState == SVNStatus.BAD_CREDENTIALS)
-				channel.sendMessageAsync(ALERT_CREDENTIALS_REJECTED, null);
+				notifier.send(guildId, channel, ALERT_CREDENTIALS_REJECTED);
 		}
 		state = newState;
 		return state;
@@ -232,16 +294,9 @@ public class SVNMonitor {
 	 * @return
 	 */
 	public SVNStatus getStatus() {
-		try {
-			repo.testConnection();
-			return announceStatusChange(SVNStatus.NORMAL);
-		}
-		catch(SVNAuthenticationException e) {
-			return announceStatusChange(SVNStatus.BAD_CREDENTIALS);
-		}
-		catch (SVNException e) {
-			return announceStatusChange(SVNStatus.NO_CONNECTION);
-		}
+		if(poller == null)
+			return announceStatusChange(SVNStatus.NOT_CONFIGURED);
+		return announceStatusChange(poller.getStatus());
 	}
 	
 	
@@ -268,15 +323,21 @@ public class SVNMonitor {
 	 * Setters
 	 * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
 	
-	public SVNMonitor setRepository(SVNRepository repo) {
-		this.repo = repo;
-		return this;
-	}
-	
-	public SVNMonitor setAuthManager(ISVNAuthenticationManager auth) {
-		if(repo == null)
+	/**
+	 * Sets the repository to monitor. The passed repository should already
+	 * have its authentication manager configured; if another monitor is
+	 * already watching a repository with the same key, the passed instance is
+	 * discarded in favor of the existing connection.
+	 * 
+	 * @param key
+	 * @param repo
+	 * @return
+	 */
+	public SVNMonitor setRepository(RepositoryKey key, SVNRepository repo) {
+		if(subscribed)
 			throw new IllegalStateException();
-		repo.setAuthenticationManager(auth);
+		releaseRepository();
+		this.poller = registry.acquire(key, repo);
 		return this;
 	}
 	
@@ -295,4 +356,21 @@ public class SVNMonitor {
 		return this;
 	}
 	
+	
+	/* * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * *
+	 * Getters
+	 * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * * */
+	
+	public long getPollInterval() {
+		return pollInterval;
+	}
+	
+	public long getLastRevision() {
+		return lastRev;
+	}
+	
+	long getSubscription() {
+		return subscription;
+	}
+	
 }
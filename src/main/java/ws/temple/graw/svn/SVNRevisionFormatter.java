@@ -1,15 +1,26 @@
 package ws.temple.graw.svn;
 
 import java.io.IOException;
-import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.SignStyle;
+import java.time.format.TextStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalField;
+import java.time.temporal.WeekFields;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.internal.util.SVNDate;
@@ -18,53 +29,273 @@ import com.github.jknack.handlebars.Context;
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Template;
 
-public class SVNRevisionFormatter {
+/**
+ * Formats revisions for announcement. Instances are immutable and may be
+ * shared between threads. Compiled formats are cached by their format
+ * strings, so that guilds configured with identical formats share a single
+ * compiled instance.
+ *
+ */
+public final class SVNRevisionFormatter {
 	private static final Logger LOG = LoggerFactory.getLogger(SVNRevisionFormatter.class);
 	
-	private final Handlebars handlebars = new Handlebars();
-	
 	public static final String DEFAULT_DATE_FORMAT = "yyyy-MM-dd HH:mm:ss z";
 	public static final String DEFAULT_MESSAGE_FORMAT = "**[{{auth}}]** *(r{{rnum}})* @ {{date}}```{{body}}```";
 	
-	private DateFormat dateFormat;
-	private Template messageFormat;
+	private static final String UNKNOWN_DATE = "[Unknown date]";
+	
+	/** Maximum number of compiled formats of each kind to cache */
+	private static final int REGISTRY_CAPACITY = 256;
+	
+	private static final Handlebars HANDLEBARS = new Handlebars();
+	
+	/* Registries of compiled formats, keyed by format string */
+	private static final Map<String,Template> TEMPLATES = new ConcurrentHashMap<>();
+	private static final Map<String,DateTimeFormatter> DATE_FORMATS = new ConcurrentHashMap<>();
+	
+	/** Template context map reused by each thread */
+	private static final ThreadLocal<Map<String,Object>> CONTEXT = ThreadLocal.withInitial(() -> new HashMap<>(8));
+	
+	private final DateTimeFormatter dateFormat;
+	private final Template messageFormat;
 	
+	
+	/**
+	 * Creates a formatter with the passed formats. A date format which can't
+	 * be compiled is replaced with the default.
+	 * 
+	 * @param dateFormat
+	 * @param messageFormat
+	 * @throws IOException If the message format can't be compiled
+	 */
 	public SVNRevisionFormatter(String dateFormat, String messageFormat) throws IOException {
-		setDateFormat(dateFormat);
-		setMessageFormat(messageFormat);
+		DateTimeFormatter compiled;
+		try {
+			compiled = compileDateFormat(dateFormat);
+		}
+		catch(IllegalArgumentException | NullPointerException e) {
+			LOG.warn("Replacing invalid date format \"{}\" with the default: {}", dateFormat, e.getMessage());
+			compiled = compileDateFormat(DEFAULT_DATE_FORMAT);
+		}
+		this.dateFormat = compiled;
+		this.messageFormat = compileTemplate(messageFormat);
 	}
 	
-	public SVNRevisionFormatter() {
-		setDateFormat(DEFAULT_DATE_FORMAT);
-		try {
-			setMessageFormat(DEFAULT_MESSAGE_FORMAT);
-		}catch (IOException e) {
-			LOG.error("Unable to instantiate default formatter", e);
+	public SVNRevisionFormatter() throws IOException {
+		this(DEFAULT_DATE_FORMAT, DEFAULT_MESSAGE_FORMAT);
+	}
+	
+	
+	/**
+	 * Checks that the passed date format can be compiled, without adding it
+	 * to the registry of compiled formats.
+	 * 
+	 * @param format
+	 * @throws IllegalArgumentException If the format is invalid
+	 */
+	public static void validateDateFormat(String format) {
+		translateDateFormat(format);
+	}
+	
+	
+	/**
+	 * Checks that the passed message format can be compiled, without adding
+	 * it to the registry of compiled formats.
+	 * 
+	 * @param format
+	 * @throws IOException If the format is invalid
+	 */
+	public static void validateMessageFormat(String format) throws IOException {
+		HANDLEBARS.compileInline(format);
+	}
+	
+	
+	/**
+	 * Returns the compiled form of the passed date format, compiling it if it
+	 * hasn't been already. Date formats are SimpleDateFormat patterns, as
+	 * guilds' stored formats always have been, and are translated into
+	 * equivalent DateTimeFormatters. Dates are rendered in the system's time
+	 * zone.
+	 * 
+	 * @param format
+	 * @return
+	 * @throws IllegalArgumentException If the format is invalid
+	 */
+	private static DateTimeFormatter compileDateFormat(String format) {
+		DateTimeFormatter compiled = DATE_FORMATS.get(format);
+		if(compiled == null) {
+			compiled = translateDateFormat(format).withZone(ZoneId.systemDefault());
+			if(DATE_FORMATS.size() < REGISTRY_CAPACITY) {
+				final DateTimeFormatter existing = DATE_FORMATS.putIfAbsent(format, compiled);
+				if(existing != null)
+					compiled = existing;
+			}
 		}
+		return compiled;
 	}
 	
-	public SVNRevisionFormatter setDateFormat(String dateFormat) {
-		this.dateFormat = new SimpleDateFormat(dateFormat);
-		return this;
+	
+	/**
+	 * Builds a DateTimeFormatter producing the same output as a
+	 * SimpleDateFormat with the passed pattern. The two pattern languages
+	 * share most letters but differ in meaning for several, such as u, S and
+	 * runs of five or more E, so patterns can't be handed over verbatim.
+	 * 
+	 * @param pattern
+	 * @return
+	 * @throws IllegalArgumentException If the pattern is invalid
+	 */
+	private static DateTimeFormatter translateDateFormat(String pattern) {
+		// Reject anything SimpleDateFormat would
+		new SimpleDateFormat(pattern);
+		
+		final Locale locale = Locale.getDefault();
+		final WeekFields weeks = WeekFields.of(locale);
+		final DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
+		
+		for(int i = 0; i < pattern.length(); ) {
+			final char c = pattern.charAt(i);
+			
+			// Quoted literal, in which two quotes stand for one
+			if(c == '\'') {
+				final StringBuilder literal = new StringBuilder();
+				if(i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+					builder.appendLiteral('\'');
+					i += 2;
+					continue;
+				}
+				for(i++; i < pattern.length(); i++) {
+					if(pattern.charAt(i) == '\'') {
+						if(i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+							literal.append('\'');
+							i++;
+						}
+						else {
+							break;
+						}
+					}
+					else {
+						literal.append(pattern.charAt(i));
+					}
+				}
+				i++;
+				builder.appendLiteral(literal.toString());
+				continue;
+			}
+			
+			if(!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+				builder.appendLiteral(c);
+				i++;
+				continue;
+			}
+			
+			int count = 1;
+			while(i + count < pattern.length() && pattern.charAt(i + count) == c)
+				count++;
+			i += count;
+			
+			switch(c) {
+			case 'G': builder.appendText(ChronoField.ERA, count >= 4 ? TextStyle.FULL : TextStyle.SHORT); break;
+			case 'y': appendYear(builder, ChronoField.YEAR_OF_ERA, count); break;
+			case 'Y': appendYear(builder, weeks.weekBasedYear(), count); break;
+			case 'M': appendMonth(builder, count, TextStyle.FULL, TextStyle.SHORT); break;
+			case 'L': appendMonth(builder, count, TextStyle.FULL_STANDALONE, TextStyle.SHORT_STANDALONE); break;
+			case 'w': appendNumber(builder, weeks.weekOfWeekBasedYear(), count); break;
+			case 'W': appendNumber(builder, weeks.weekOfMonth(), count); break;
+			case 'D': appendNumber(builder, ChronoField.DAY_OF_YEAR, count); break;
+			case 'd': appendNumber(builder, ChronoField.DAY_OF_MONTH, count); break;
+			case 'F': appendNumber(builder, ChronoField.ALIGNED_WEEK_OF_MONTH, count); break;
+			case 'E': builder.appendText(ChronoField.DAY_OF_WEEK, count >= 4 ? TextStyle.FULL : TextStyle.SHORT); break;
+			case 'u': appendNumber(builder, ChronoField.DAY_OF_WEEK, count); break;
+			case 'a': builder.appendText(ChronoField.AMPM_OF_DAY, TextStyle.SHORT); break;
+			case 'H': appendNumber(builder, ChronoField.HOUR_OF_DAY, count); break;
+			case 'k': appendNumber(builder, ChronoField.CLOCK_HOUR_OF_DAY, count); break;
+			case 'K': appendNumber(builder, ChronoField.HOUR_OF_AMPM, count); break;
+			case 'h': appendNumber(builder, ChronoField.CLOCK_HOUR_OF_AMPM, count); break;
+			case 'm': appendNumber(builder, ChronoField.MINUTE_OF_HOUR, count); break;
+			case 's': appendNumber(builder, ChronoField.SECOND_OF_MINUTE, count); break;
+			case 'S': appendNumber(builder, ChronoField.MILLI_OF_SECOND, count); break;
+			case 'z': builder.appendZoneText(count >= 4 ? TextStyle.FULL : TextStyle.SHORT); break;
+			case 'Z': builder.appendOffset("+HHMM", "+0000"); break;
+			case 'X': builder.appendOffset(count == 1 ? "+HH" : count == 2 ? "+HHMM" : "+HH:MM", "Z"); break;
+			default:
+				throw new IllegalArgumentException("Illegal pattern character '" + c + "'");
+			}
+		}
+		return builder.toFormatter(locale);
+	}
+	
+	private static void appendNumber(DateTimeFormatterBuilder builder, TemporalField field, int count) {
+		builder.appendValue(field, Math.min(count, 19), 19, SignStyle.NORMAL);
+	}
+	
+	private static void appendYear(DateTimeFormatterBuilder builder, TemporalField field, int count) {
+		if(count == 2)
+			builder.appendValueReduced(field, 2, 2, 2000);
+		else
+			appendNumber(builder, field, count);
 	}
 	
-	public SVNRevisionFormatter setMessageFormat(String messageFormat) throws IOException {
-		this.messageFormat = handlebars.compileInline(messageFormat);
-		return this;
+	private static void appendMonth(DateTimeFormatterBuilder builder, int count, TextStyle full, TextStyle brief) {
+		if(count >= 3)
+			builder.appendText(ChronoField.MONTH_OF_YEAR, count >= 4 ? full : brief);
+		else
+			appendNumber(builder, ChronoField.MONTH_OF_YEAR, count);
+	}
+	
+	
+	/**
+	 * Returns the compiled form of the passed message format, compiling it
+	 * if it hasn't been already.
+	 * 
+	 * @param format
+	 * @return
+	 * @throws IOException If the format is invalid
+	 */
+	private static Template compileTemplate(String format) throws IOException {
+		Template compiled = TEMPLATES.get(format);
+		if(compiled == null) {
+			compiled = HANDLEBARS.compileInline(format);
+			if(TEMPLATES.size() < REGISTRY_CAPACITY) {
+				final Template existing = TEMPLATES.putIfAbsent(format, compiled);
+				if(existing != null)
+					compiled = existing;
+			}
+		}
+		return compiled;
 	}
 
 	public String format(long rev, SVNProperties props) throws SVNException, IOException {
-		final Map<String,String> map = new HashMap<>();
-		map.put("auth", props.getStringValue(SVNRevisionProperty.AUTHOR));
-		map.put("date", dateFormat.format(SVNDate.parseDateString(props.getStringValue(SVNRevisionProperty.DATE))));
-		map.put("rnum", Long.toString(rev));
-		
-		// Check to make sure some asshole didn't commit without a message,
-		// as Graw will vomit backticks in disgust if he sees such a thing.
-		final String body = props.getStringValue(SVNRevisionProperty.LOG);
-		map.put("body", body.isEmpty() ? "[No description]" : body);
-		
-		return StringEscapeUtils.unescapeHtml4(messageFormat.apply(Context.newContext(map)));
+		return format(rev,
+				props.getStringValue(SVNRevisionProperty.AUTHOR),
+				parseDate(props.getStringValue(SVNRevisionProperty.DATE)),
+				props.getStringValue(SVNRevisionProperty.LOG));
+	}
+	
+	private static Date parseDate(String date) {
+		return (date == null ? null : SVNDate.parseDateString(date));
+	}
+	
+	public String format(SVNLogEntry entry) throws IOException {
+		return format(entry.getRevision(), entry.getAuthor(), entry.getDate(), entry.getMessage());
+	}
+	
+	private String format(long rev, String author, Date date, String body) throws IOException {
+		final Map<String,Object> map = CONTEXT.get();
+		try {
+			map.put("auth", author);
+			map.put("date", date == null ? UNKNOWN_DATE : dateFormat.format(date.toInstant()));
+			map.put("rnum", Long.toString(rev));
+			
+			// Check to make sure some asshole didn't commit without a message,
+			// as Graw will vomit backticks in disgust if he sees such a thing.
+			map.put("body", body == null || body.isEmpty() ? "[No description]" : body);
+			
+			return StringEscapeUtils.unescapeHtml4(messageFormat.apply(Context.newContext(map)));
+		}
+		finally {
+			map.clear();
+		}
 	}
 
 }
@@ -0,0 +1,5 @@
+DELETE FROM discord_creds;
+ALTER TABLE discord_creds DROP COLUMN stored_cred;
+ALTER TABLE discord_creds ADD COLUMN access_token VARCHAR(512);
+ALTER TABLE discord_creds ADD COLUMN refresh_token VARCHAR(512);
+ALTER TABLE discord_creds ADD COLUMN expiration_time_ms BIGINT;
@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS notification_outbox (
+	guild_id VARCHAR(32) NOT NULL,
+	revision BIGINT NOT NULL,
+	message VARCHAR(2000) NOT NULL,
+	PRIMARY KEY (guild_id, revision)
+);
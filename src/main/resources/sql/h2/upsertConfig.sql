@@ -0,0 +1,3 @@
+MERGE INTO configs (guild_id, repo_url, username, password, interval, responsive, date_fmt, message_fmt, channel_id, maintainers_id)
+KEY (guild_id)
+VALUES (:gid, :c.repoUrl, :c.username, :c.password, :c.queryInterval, :c.responsive, :c.dateFormat, :c.messageFormat, :c.logChannel, :c.maintenanceRole);
@@ -0,0 +1 @@
+MERGE INTO discord_creds (user_id, access_token, refresh_token, expiration_time_ms) KEY (user_id) VALUES (:uid, :c.accessToken, :c.refreshToken, :c.expirationTimeMilliseconds);
@@ -0,0 +1 @@
+MERGE INTO meta_info (meta_key, meta_value) KEY (meta_key) VALUES (:key, :value);
@@ -0,0 +1,8 @@
+MERGE INTO configs AS t
+USING (VALUES(CAST(:gid AS VARCHAR(32)))) AS s(guild_id)
+ON t.guild_id = s.guild_id
+WHEN MATCHED THEN UPDATE SET
+	repo_url=:c.repoUrl, username=:c.username, password=:c.password, interval=:c.queryInterval, responsive=:c.responsive, date_fmt=:c.dateFormat, message_fmt=:c.messageFormat, channel_id=:c.logChannel, maintainers_id=:c.maintenanceRole
+WHEN NOT MATCHED THEN INSERT
+	(guild_id, repo_url, username, password, interval, responsive, date_fmt, message_fmt, channel_id, maintainers_id)
+	VALUES (s.guild_id, :c.repoUrl, :c.username, :c.password, :c.queryInterval, :c.responsive, :c.dateFormat, :c.messageFormat, :c.logChannel, :c.maintenanceRole);
@@ -0,0 +1,5 @@
+MERGE INTO discord_creds AS t
+USING (VALUES(CAST(:uid AS VARCHAR(64)))) AS s(user_id)
+ON t.user_id = s.user_id
+WHEN MATCHED THEN UPDATE SET access_token=:c.accessToken, refresh_token=:c.refreshToken, expiration_time_ms=:c.expirationTimeMilliseconds
+WHEN NOT MATCHED THEN INSERT (user_id, access_token, refresh_token, expiration_time_ms) VALUES (s.user_id, :c.accessToken, :c.refreshToken, :c.expirationTimeMilliseconds);
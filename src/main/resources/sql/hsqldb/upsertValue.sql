@@ -0,0 +1,5 @@
+MERGE INTO meta_info AS t
+USING (VALUES(CAST(:key AS VARCHAR(128)))) AS s(meta_key)
+ON t.meta_key = s.meta_key
+WHEN MATCHED THEN UPDATE SET meta_value=:value
+WHEN NOT MATCHED THEN INSERT (meta_key, meta_value) VALUES (s.meta_key, :value);
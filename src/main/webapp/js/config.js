@@ -1,3 +1,54 @@
+/** Interval between polls for the result of a repository check */
+var CHECK_POLL_INTERVAL = 1000;
+
+/** Number of polls to make before giving up on a repository check */
+var CHECK_POLL_LIMIT = 60;
+
+function showResult(data) {
+	// Clear the form status
+	$('.has-error').removeClass('has-error');
+	$('#alert_box').removeClass('hidden alert-success alert-warning alert-danger');
+	$('#alert_box').html(data.message);
+	
+	// Update the form with the error status
+	if(data.status === 'success') {
+		$('#alert_box').addClass('alert-success');
+	}
+	else if(data.status === 'warning') {
+		$('#alert_box').addClass('alert-warning');
+	}
+	else if(data.status === 'error') {
+		$('#alert_box').addClass('alert-danger');
+		$.each(data.errors || [], function(index, field) {
+			$('#error_' + field).addClass('has-error');
+		});
+	}
+}
+
+function pollCheck(checkId, remaining) {
+	if(remaining <= 0) {
+		showResult({
+			status: 'warning',
+			message: 'The changes were applied successfully, but the repository connection could not be verified in time.'
+		});
+		return;
+	}
+	
+	$.get({
+		url: 'validate',
+		data: { check: checkId },
+		dataType: 'json',
+		success: function(data) {
+			if(data.status === 'pending') {
+				setTimeout(function() { pollCheck(checkId, remaining - 1); }, CHECK_POLL_INTERVAL);
+			}
+			else {
+				showResult(data);
+			}
+		}
+	});
+}
+
 $('#config_form').submit(function(event) {
 	
 	// Stop the default form submission handling 
@@ -11,27 +62,14 @@ $('#config_form').submit(function(event) {
 		data: $('#config_form').serialize(),
 		dataType: 'json',
 		success: function(data) {
-			// Clear the form status
-			$('.has-error').removeClass('has-error');
-			$('#alert_box').removeClass('hidden alert-success alert-warning alert-danger');
-			$('#alert_box').html(data.message);
+			showResult(data);
+			window.location.hash = "alert_box";
 			
-			// Update the form with the error status
-			if(data.status === 'success') {
-				$('#alert_box').addClass('alert-success');
-			}
-			else if(data.status === 'warning') {
-				$('#alert_box').addClass('alert-warning');
+			// Follow up on the repository check, if one was started
+			if(data.check) {
+				setTimeout(function() { pollCheck(data.check, CHECK_POLL_LIMIT); }, CHECK_POLL_INTERVAL);
 			}
-			else if(data.status === 'error') {
-				$('#alert_box').addClass('alert-danger');
-				$.each(data.errors, function(index, field) {
-					$('#error_' + field).addClass('has-error');
-				});
-			}
-			
-			window.location.hash = "alert_box";
 		}
 	});
 	
-});
\ No newline at end of file
+});
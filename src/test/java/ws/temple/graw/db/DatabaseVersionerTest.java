@@ -0,0 +1,60 @@
+package ws.temple.graw.db;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import com.google.api.client.auth.oauth2.StoredCredential;
+
+import ws.temple.graw.db.dao.CredentialDAO;
+import ws.temple.graw.db.dao.MetaDAO;
+
+public class DatabaseVersionerTest {
+
+	private static final String USER = "170000000000000001";
+
+	private DBI dbi;
+
+	@Before
+	public void setUp() {
+		// A database as it was left by version 1, before credentials had typed columns
+		dbi = new DBI("jdbc:hsqldb:mem:versioner", "SA", "");
+		dbi.setStatementLocator(new DialectStatementLocator(Dialect.HSQLDB));
+		try(final Handle handle = dbi.open()) {
+			handle.createScript("sql/bootstrap.sql").execute();
+			handle.createScript("sql/0000.sql").execute();
+			handle.attach(MetaDAO.class).setVersion(1);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		TestDatabase.drop(dbi);
+	}
+
+
+	@Test
+	public void serializedCredentialsSurviveUpgrade() {
+		final StoredCredential cred = new StoredCredential();
+		cred.setAccessToken("access");
+		cred.setRefreshToken("refresh");
+		cred.setExpirationTimeMilliseconds(1234567890L);
+		try(final Handle handle = dbi.open()) {
+			handle.createStatement("INSERT INTO discord_creds (user_id, stored_cred) VALUES (:uid, :cred)")
+					.bind("uid", USER)
+					.bind("cred", cred)
+					.execute();
+			new DatabaseVersioner(handle).execute();
+		}
+
+		final StoredCredential migrated = new QueryRunner<>(dbi, CredentialDAO.class).query(dao -> dao.getCredential(USER));
+		assertEquals("access", migrated.getAccessToken());
+		assertEquals("refresh", migrated.getRefreshToken());
+		assertEquals(Long.valueOf(1234567890L), migrated.getExpirationTimeMilliseconds());
+	}
+
+}
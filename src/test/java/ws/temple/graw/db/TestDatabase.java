@@ -0,0 +1,63 @@
+package ws.temple.graw.db;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.Handle;
+
+import ws.temple.graw.config.GuildConfig;
+
+/**
+ * Throwaway in-memory HSQLDB databases for tests.
+ *
+ */
+public final class TestDatabase {
+
+	private static final AtomicInteger COUNT = new AtomicInteger();
+
+	private TestDatabase() {}
+
+
+	/**
+	 * Creates an empty database with the current schema.
+	 *
+	 * @return
+	 */
+	public static DBI create() {
+		final DBI dbi = new DBI("jdbc:hsqldb:mem:test" + COUNT.incrementAndGet(), "SA", "");
+		dbi.setStatementLocator(new DialectStatementLocator(Dialect.HSQLDB));
+		try(final Handle handle = dbi.open()) {
+			new DatabaseVersioner(handle).execute();
+		}
+		return dbi;
+	}
+
+
+	/**
+	 * Shuts down the passed database, discarding its contents.
+	 *
+	 * @param dbi
+	 */
+	public static void drop(DBI dbi) {
+		try(final Handle handle = dbi.open()) {
+			handle.execute("SHUTDOWN");
+		}
+	}
+
+
+	/**
+	 * Returns a configuration with every required column filled in.
+	 *
+	 * @param repoUrl
+	 * @return
+	 */
+	public static GuildConfig config(String repoUrl) {
+		final GuildConfig config = new GuildConfig();
+		config.setRepoUrl(repoUrl);
+		config.setUsername("graw");
+		config.setPassword(new byte[] { 1, 2, 3, 4 });
+		config.setLogChannel("300000000000000000");
+		return config;
+	}
+
+}
@@ -0,0 +1,98 @@
+package ws.temple.graw.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+import org.skife.jdbi.v2.util.IntegerMapper;
+
+import ws.temple.graw.config.GuildConfig;
+import ws.temple.graw.db.dao.ConfigDAO;
+
+public class UpsertConcurrencyTest {
+
+	private static final String GUILD = "200000000000000001";
+	private static final int THREADS = 8;
+	private static final int ITERATIONS = 50;
+
+	private DBI dbi;
+	private QueryRunner<ConfigDAO> runner;
+
+	@Before
+	public void setUp() {
+		dbi = TestDatabase.create();
+		runner = new QueryRunner<>(dbi, ConfigDAO.class);
+	}
+
+	@After
+	public void tearDown() {
+		TestDatabase.drop(dbi);
+	}
+
+
+	@Test
+	public void concurrentUpsertsOfOneGuildProduceOneRow() throws Exception {
+		final Set<Integer> intervals = ConcurrentHashMap.newKeySet();
+		final Set<Long> revisions = ConcurrentHashMap.newKeySet();
+		final CountDownLatch start = new CountDownLatch(1);
+		final ExecutorService exec = Executors.newFixedThreadPool(THREADS);
+		final List<Future<?>> results = new ArrayList<>();
+		try {
+			for(int t = 0; t < THREADS; t++) {
+				final int thread = t;
+				results.add(exec.submit(() -> {
+					start.await();
+					for(int i = 0; i < ITERATIONS; i++) {
+						// Every column of a write is derived from the same value, so a row mixing two writes shows up
+						final int value = thread * ITERATIONS + i + 1;
+						final GuildConfig config = TestDatabase.config("svn://example.com/repo" + value);
+						config.setUsername("user" + value);
+						config.setQueryInterval(value);
+						intervals.add(value);
+						revisions.add((long) value);
+						runner.execute(dao -> dao.putConfig(GUILD, config));
+						runner.executeTransaction(dao -> dao.updateLatestRevisions(
+								Collections.singletonList(GUILD), Collections.singletonList((long) value)));
+					}
+					return null;
+				}));
+			}
+			start.countDown();
+
+			// Rethrows any duplicate-key or other failure from the writers
+			for(Future<?> f : results)
+				f.get();
+		}
+		finally {
+			exec.shutdownNow();
+		}
+
+		final int rows = runner.query((handle, dao) -> handle
+				.createQuery("SELECT COUNT(*) FROM configs WHERE guild_id = :gid")
+				.bind("gid", GUILD)
+				.map(IntegerMapper.FIRST)
+				.first());
+		assertEquals(1, rows);
+
+		final GuildConfig stored = runner.query(dao -> dao.getConfig(GUILD));
+		final int interval = stored.getQueryInterval();
+		assertTrue(intervals.contains(interval));
+		assertEquals("user" + interval, stored.getUsername());
+		assertEquals("svn://example.com/repo" + interval, stored.getRepoUrl());
+		assertTrue(revisions.contains(runner.query(dao -> dao.getLatestRevision(GUILD))));
+	}
+
+}
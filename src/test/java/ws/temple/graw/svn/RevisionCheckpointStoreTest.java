@@ -0,0 +1,87 @@
+package ws.temple.graw.svn;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.function.Consumer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.skife.jdbi.v2.DBI;
+
+import ws.temple.graw.db.QueryRunner;
+import ws.temple.graw.db.TestDatabase;
+import ws.temple.graw.db.dao.ConfigDAO;
+
+public class RevisionCheckpointStoreTest {
+
+	private static final String GUILD = "200000000000000001";
+
+	private DBI dbi;
+	private QueryRunner<ConfigDAO> runner;
+
+	@Before
+	public void setUp() {
+		dbi = TestDatabase.create();
+		runner = new QueryRunner<>(dbi, ConfigDAO.class);
+		runner.execute(dao -> {
+			dao.putConfig(GUILD, TestDatabase.config("svn://example.com/repo"));
+			dao.updateLatestRevision(GUILD, 5);
+		});
+	}
+
+	@After
+	public void tearDown() {
+		TestDatabase.drop(dbi);
+	}
+
+
+	@Test
+	public void unflushedRevisionsAreReplayedAfterCrash() {
+		final RevisionCheckpointStore store = new RevisionCheckpointStore(runner);
+		store.record(GUILD, 9);
+		assertEquals(9, store.getLatestRevision(GUILD));
+
+		// The process dies before the flush; a new store sees only what was written
+		final RevisionCheckpointStore restarted = new RevisionCheckpointStore(runner);
+		restarted.preload();
+		assertEquals("revisions 6-9 are fetched again", 5, restarted.getLatestRevision(GUILD));
+	}
+
+
+	@Test
+	public void flushedRevisionsSurviveRestart() {
+		final RevisionCheckpointStore store = new RevisionCheckpointStore(runner);
+		store.record(GUILD, 9);
+		store.shutdown();
+
+		final RevisionCheckpointStore restarted = new RevisionCheckpointStore(runner);
+		restarted.preload();
+		assertEquals(9, restarted.getLatestRevision(GUILD));
+	}
+
+
+	@Test
+	public void recordDuringFlushIsNotLost() {
+		final RevisionCheckpointStore[] store = new RevisionCheckpointStore[1];
+		final QueryRunner<ConfigDAO> racing = new QueryRunner<ConfigDAO>(dbi, ConfigDAO.class) {
+			@Override
+			public void executeTransaction(Consumer<ConfigDAO> query) {
+				// A newer revision arrives while the batch is being written
+				store[0].record(GUILD, 11);
+				super.executeTransaction(query);
+			}
+		};
+		store[0] = new RevisionCheckpointStore(racing);
+
+		store[0].record(GUILD, 10);
+		store[0].flush();
+		assertEquals(10, runner.query(dao -> dao.getLatestRevision(GUILD)).longValue());
+		assertEquals(11, store[0].getLatestRevision(GUILD));
+
+		// The next flush writes the newer revision rather than having dropped it
+		store[0].flush();
+		assertEquals(11, runner.query(dao -> dao.getLatestRevision(GUILD)).longValue());
+	}
+
+}